@@ -0,0 +1,46 @@
+package org.codehaus.dimple;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Called by the static initializer of generated interceptors
+ * to get the invokers of their call sites, their constants,
+ * or the default methods they inherit.
+ * This class is public just so the generated classes
+ * can use it. 
+ * It is internal use only.
+ * @author benyu
+ */
+public final class InternalDimpleBootstrap {
+  private InternalDimpleBootstrap() {}
+  /**
+   * Link the call sites of a generated interceptor.
+   * @param key the key the call sites were registered with.
+   * @return the dynamic invokers of the call sites, in the order of registration.
+   */
+  public static MethodHandle[] link(String key) {
+    return IndyLinkage.link(key);
+  }
+  /**
+   * Get the constants of a generated interceptor.
+   * @param key the key the constants were registered with.
+   * @return the constants, in the order of registration.
+   */
+  public static Object[] constants(String key) {
+    return ClassConstants.get(key);
+  }
+  /**
+   * Find a default method inherited by a generated interceptor.
+   * @param caller the lookup of the generated class.
+   * @param type the name of the intercepted type.
+   * @param name the name of the method.
+   * @param descriptor the descriptor of the method.
+   * @return the method handle running the default body, 
+   * with the intercepted type as receiver.
+   */
+  public static MethodHandle findDefault(MethodHandles.Lookup caller, 
+      String type, String name, String descriptor) throws ReflectiveOperationException {
+    return MethodInvokers.findDefault(caller, type, name, descriptor);
+  }
+}
@@ -0,0 +1,19 @@
+package org.codehaus.dimple;
+
+/**
+ * All generated interceptors implement this interface.
+ * This interface is public just so the generated classes
+ * can use it. 
+ * It is internal use only.
+ * @author benyu
+ */
+public interface InternalDimpleInterceptor {
+  /**
+   * Create a new instance of the same generated class.
+   * Called on a prototype instance so that no reflection is needed.
+   * @param interceptee the intercepted object.
+   * @param overrider the object used to intercept.
+   * @return the new instance.
+   */
+  Object newDimpleInterceptor(Object interceptee, Object overrider);
+}
@@ -1,13 +0,0 @@
-package org.codehaus.dimple;
-
-/**
- * All generated interceptors extend from this class.
- * This class is public just so the generated classes
- * can use it. 
- * It is internal use only.
- * @author benyu
- */
-public abstract class InternalDimpleInterceptorBase {
-  protected Object interceptee;
-  protected Object overrider;
-}
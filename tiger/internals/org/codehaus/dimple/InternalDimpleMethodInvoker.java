@@ -0,0 +1,20 @@
+package org.codehaus.dimple;
+
+/**
+ * All generated method invokers extend from this class.
+ * This class is public just so the generated classes
+ * can use it. 
+ * It is internal use only.
+ * @author benyu
+ */
+public abstract class InternalDimpleMethodInvoker {
+  /**
+   * Invoke the method identified by <i>index</i> on <i>target</i>.
+   * @param index the index of the method in the generated table.
+   * @param target the target object. Ignored for static methods.
+   * @param args the arguments, with primitives boxed. null if no argument.
+   * @return the return value, boxed if primitive. null for void methods.
+   */
+  public abstract Object invoke(int index, Object target, Object[] args)
+  throws Throwable;
+}
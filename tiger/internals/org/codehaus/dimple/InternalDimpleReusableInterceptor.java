@@ -0,0 +1,17 @@
+package org.codehaus.dimple;
+
+/**
+ * Generated interceptors whose fields can be replaced implement this interface.
+ * This interface is public just so the generated classes
+ * can use it. 
+ * It is internal use only.
+ * @author benyu
+ */
+public interface InternalDimpleReusableInterceptor extends InternalDimpleInterceptor {
+  /**
+   * Replace the intercepted object and the object used to intercept.
+   * @param interceptee the intercepted object.
+   * @param overrider the object used to intercept.
+   */
+  void rebindDimpleInterceptor(Object interceptee, Object overrider);
+}
@@ -0,0 +1,91 @@
+package org.codehaus.dimple;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * ClassEmitter backed by asm.
+ * @author benyu
+ */
+final class AsmClassEmitter implements ClassEmitter {
+  private final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+  public void visit(int version, int access, String name, String superName,
+      String[] interfaces) {
+    writer.visit(version, access, name, null, superName, interfaces);
+  }
+  public void visitSource(String source) {
+    writer.visitSource(source, null);
+  }
+  public void visitField(int access, String name, String descriptor) {
+    writer.visitField(access, name, descriptor, null, null).visitEnd();
+  }
+  public MethodEmitter visitMethod(int access, String name, String descriptor, 
+      String[] exceptions) {
+    return new AsmMethodEmitter(writer.visitMethod(access, name, descriptor, null, exceptions));
+  }
+  public void visitEnd() {
+    writer.visitEnd();
+  }
+  public byte[] toByteArray() {
+    return writer.toByteArray();
+  }
+  private static final class AsmMethodEmitter implements MethodEmitter {
+    private final MethodVisitor code;
+    AsmMethodEmitter(MethodVisitor code) {
+      this.code = code;
+    }
+    private static Label toLabel(CodeLabel label) {
+      if(label.asmLabel == null) {
+        label.asmLabel = new Label();
+      }
+      return (Label)label.asmLabel;
+    }
+    public void visitCode() {
+      code.visitCode();
+    }
+    public void visitInsn(int opcode) {
+      code.visitInsn(opcode);
+    }
+    public void visitIntInsn(int opcode, int operand) {
+      code.visitIntInsn(opcode, operand);
+    }
+    public void visitVarInsn(int opcode, int var) {
+      code.visitVarInsn(opcode, var);
+    }
+    public void visitTypeInsn(int opcode, String type) {
+      code.visitTypeInsn(opcode, type);
+    }
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+      code.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
+      code.visitMethodInsn(opcode, owner, name, descriptor);
+    }
+    public void visitJumpInsn(int opcode, CodeLabel label) {
+      code.visitJumpInsn(opcode, toLabel(label));
+    }
+    public void visitLabel(CodeLabel label) {
+      code.visitLabel(toLabel(label));
+    }
+    public void visitLdcInsn(Object cst) {
+      code.visitLdcInsn(cst);
+    }
+    public void visitTableSwitchInsn(int min, int max, CodeLabel dflt, CodeLabel[] labels) {
+      Label[] asmLabels = new Label[labels.length];
+      for(int i=0; i<labels.length; i++) {
+        asmLabels[i] = toLabel(labels[i]);
+      }
+      code.visitTableSwitchInsn(min, max, toLabel(dflt), asmLabels);
+    }
+    public void visitLocalVariable(String name, String descriptor, 
+        CodeLabel start, CodeLabel end, int index) {
+      code.visitLocalVariable(name, descriptor, null, toLabel(start), toLabel(end), index);
+    }
+    public void visitEnd() {
+      //computed by asm.
+      code.visitMaxs(0, 0);
+      code.visitEnd();
+    }
+  }
+}
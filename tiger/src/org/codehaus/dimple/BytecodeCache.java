@@ -0,0 +1,268 @@
+package org.codehaus.dimple;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores the byte code of generated classes in the directory named by
+ * system property {@code dimple.cache.dir}, so that later runs define them
+ * without generating them again.
+ * <p>
+ * Class files are laid out by package, like a class path directory.
+ * When the directory, or a jar of it, is also in the class path of the
+ * class loader the classes are generated for, they are loaded by name
+ * and can be archived with AppCDS.
+ * <p>
+ * Cached classes are named after a hash of the signatures they are generated from,
+ * the version of dimple and the byte code of the classes generating them,
+ * so a change to any of them results in a new name instead of a stale class.
+ * The cache is best effort: a class that cannot be read or written is generated.
+ * <p>
+ * Cached classes become code of the application, so the directory must only be
+ * writable by whoever is trusted to run code in it.
+ * Each class file is stored with a SHA-256 digest of its content, and a class file
+ * not matching its digest is generated again. The digest detects a corrupted or
+ * partially replaced class file, not a class file replaced together with its digest.
+ * @author benyu
+ */
+final class BytecodeCache {
+  private BytecodeCache() {}
+  /*
+   * The classes whose byte code determines the generated byte code.
+   * Read as resources, so the asm classes are not loaded.
+   */
+  private static final String[] GENERATORS = {
+    "InterceptorGenerator", "InvokerGenerator", "BytecodeCache", "ClassEmitters", 
+    "AsmClassEmitter", "SimpleClassEmitter", "Descriptors"
+  };
+  /*
+   * computed on first use, so runs without the cache never read the generators.
+   */
+  private static final class Version {
+    static final String VALUE = getVersion();
+  }
+  /*
+   * Builds without a manifest all have the same version, 
+   * so the digest of the generators tells them apart.
+   */
+  static String getVersion() {
+    final String version = BytecodeCache.class.getPackage().getImplementationVersion();
+    final MessageDigest digest = newDigest();
+    for(String generator : GENERATORS) {
+      final InputStream in = BytecodeCache.class.getResourceAsStream(generator+".class");
+      if(in == null) continue;
+      try {
+        try {
+          final byte[] buf = new byte[4096];
+          for(int n; (n=in.read(buf))>0;) {
+            digest.update(buf, 0, n);
+          }
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch(IOException e) {
+        //the version alone tells the builds apart.
+      }
+    }
+    return (version==null?"dev":version)+":"+toHex(digest.digest(), 8);
+  }
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+  private static String toHex(byte[] bytes, int length) {
+    final StringBuilder buf = new StringBuilder();
+    for(int i=0; i<length; i++) {
+      buf.append(Character.forDigit((bytes[i]>>4)&0xF, 16));
+      buf.append(Character.forDigit(bytes[i]&0xF, 16));
+    }
+    return buf.toString();
+  }
+  private static File getDirectory() {
+    final String dir = System.getProperty("dimple.cache.dir");
+    return dir==null?null:new File(dir);
+  }
+  static boolean isEnabled() {
+    return getDirectory() != null;
+  }
+  /**
+   * Hash the signatures of the types a class is generated from.
+   * Classes of the same types defined in different kinds of class loaders
+   * have different names, in case one class loader delegates to the other.
+   * @param kind what kind of class is generated from the types.
+   * @param loader the class loader the class is defined in.
+   * @param types the types.
+   * @return the hash, usable in a class name.
+   */
+  static String hash(String kind, ClassLoader loader, Class<?>... types) {
+    final MessageDigest digest = newDigest();
+    update(digest, Version.VALUE);
+    update(digest, kind);
+    if(loader != null) {
+      update(digest, loader.getClass().getName());
+      update(digest, String.valueOf(loader.getName()));
+    }
+    for(Class<?> type : types) {
+      update(digest, type.getName());
+      for(String signature : getSignatures(type)) {
+        update(digest, signature);
+      }
+    }
+    return toHex(digest.digest(), 8);
+  }
+  private static void update(MessageDigest digest, String s) {
+    digest.update(s.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+  }
+  /*
+   * The public methods, plus the constructors the generated subclass may call.
+   */
+  private static List<String> getSignatures(Class<?> type) {
+    final List<String> signatures = new ArrayList<String>();
+    for(Method mtd : type.getMethods()) {
+      signatures.add(mtd.toGenericString());
+    }
+    for(Constructor<?> ctor : type.getDeclaredConstructors()) {
+      signatures.add(ctor.toGenericString());
+    }
+    Collections.sort(signatures);
+    return signatures;
+  }
+  /**
+   * Get a cached class next to the neighbor.
+   * A class in the class path of the class loader of the neighbor is loaded by name.
+   * Otherwise the class is defined from the cached byte code.
+   * @param neighbor the class whose package and class loader the class is defined in.
+   * @param className the name of the cached class.
+   * @param hideable whether the class can be defined as a hidden class.
+   * @return the class, or null if not cached.
+   */
+  static Class<?> getClass(Class<?> neighbor, String className, boolean hideable) {
+    final Class<?> loaded = loadFromClassPath(neighbor.getClassLoader(), className);
+    if(loaded != null) {
+      return loaded;
+    }
+    final byte[] bytecode = load(className);
+    if(bytecode == null) {
+      return null;
+    }
+    return define(neighbor, className, bytecode, hideable);
+  }
+  /*
+   * A class in the class path of a parent class loader is loaded by the parent,
+   * and then it cannot be defined in the class loader of the neighbor any more.
+   */
+  private static Class<?> loadFromClassPath(ClassLoader loader, String className) {
+    if(loader == null) return null;
+    final String resource = className.replace('.', '/')+".class";
+    final ClassLoader parent = loader.getParent();
+    if(loader.getResource(resource) == null
+        || (parent != null && parent.getResource(resource) != null)) {
+      return null;
+    }
+    return findDefinedClass(loader, className);
+  }
+  /**
+   * Define a class with a cached name.
+   * Unlike classes with generated names, it may already be defined 
+   * by a racing thread, in which case that class is used.
+   * @param neighbor the class whose package and class loader the class is defined in.
+   * @param className the name of the cached class.
+   * @param bytecode the byte code.
+   * @param hideable whether the class can be defined as a hidden class.
+   * @return the class.
+   */
+  static Class<?> define(Class<?> neighbor, String className, byte[] bytecode,
+      boolean hideable) {
+    try {
+      return hideable?ClassDefiner.defineClass(neighbor, className, bytecode)
+        :ClassDefiner.defineNamedClass(neighbor, className, bytecode);
+    }
+    catch(LinkageError e) {
+      final Class<?> defined = findDefinedClass(neighbor.getClassLoader(), className);
+      if(defined == null) throw e;
+      return defined;
+    }
+  }
+  private static Class<?> findDefinedClass(ClassLoader loader, String className) {
+    try {
+      final Class<?> defined = Class.forName(className, true, loader);
+      return defined.getClassLoader()==loader?defined:null;
+    }
+    catch(ClassNotFoundException e) {
+      return null;
+    }
+  }
+  private static File getFile(File dir, String className) {
+    return new File(dir, className.replace('.', File.separatorChar)+".class");
+  }
+  private static File getDigestFile(File file) {
+    return new File(file.getParentFile(), file.getName()+".sha256");
+  }
+  private static String getDigest(byte[] bytecode) {
+    final byte[] digest = newDigest().digest(bytecode);
+    return toHex(digest, digest.length);
+  }
+  private static byte[] load(String className) {
+    final File dir = getDirectory();
+    if(dir == null) return null;
+    final File file = getFile(dir, className);
+    final File digestFile = getDigestFile(file);
+    if(!file.isFile() || !digestFile.isFile()) return null;
+    try {
+      final byte[] bytecode = Files.readAllBytes(file.toPath());
+      final String expected = 
+        new String(Files.readAllBytes(digestFile.toPath()), StandardCharsets.US_ASCII);
+      //a class file not matching its digest is generated and stored again.
+      return expected.trim().equals(getDigest(bytecode))?bytecode:null;
+    }
+    catch(IOException e) {
+      return null;
+    }
+  }
+  /**
+   * Store the byte code of a generated class, and its digest.
+   * The files are replaced atomically, so concurrent runs never see a partial class file.
+   */
+  static void store(String className, byte[] bytecode) {
+    final File dir = getDirectory();
+    if(dir == null) return;
+    final File file = getFile(dir, className);
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      write(file, bytecode);
+      write(getDigestFile(file), getDigest(bytecode).getBytes(StandardCharsets.US_ASCII));
+    }
+    catch(IOException e) {
+      //the class is generated again next time.
+    }
+  }
+  private static void write(File file, byte[] content) throws IOException {
+    final File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try {
+      Files.write(tmp.toPath(), content);
+      Files.move(tmp.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+}
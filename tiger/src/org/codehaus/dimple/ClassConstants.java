@@ -0,0 +1,35 @@
+package org.codehaus.dimple;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Objects bound as constants into classes being generated.
+ * <p>
+ * Constants are registered under the name of the generated class before it is defined,
+ * and fetched once by its static initializer through {@link InternalDimpleBootstrap}.
+ * They are unregistered as soon as the class is initialized,
+ * so only the static fields of the generated class refer to them.
+ * @author benyu
+ */
+final class ClassConstants {
+  private ClassConstants() {}
+  private static final ConcurrentMap<String, Object[]> pending =
+    new ConcurrentHashMap<String, Object[]>();
+  static void register(String key, Object[] constants) {
+    pending.put(key, constants);
+  }
+  /**
+   * Called once the generated class is defined and initialized, or failed to.
+   */
+  static void unregister(String key) {
+    pending.remove(key);
+  }
+  static Object[] get(String key) {
+    final Object[] constants = pending.get(key);
+    if(constants == null) {
+      throw new IllegalStateException("no constant registered for " + key);
+    }
+    return constants;
+  }
+}
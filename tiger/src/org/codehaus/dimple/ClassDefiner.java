@@ -0,0 +1,82 @@
+package org.codehaus.dimple;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+
+import net.sf.cglib.core.ReflectUtils;
+
+/**
+ * Defines generated classes next to an existing class of the same package.
+ * <p>
+ * Classes are defined through a private {@link MethodHandles.Lookup} of the
+ * neighbor class, so no deep reflection on {@link ClassLoader} is needed.
+ * When the lookup has full privilege access, the class is a hidden class
+ * that can be unloaded as soon as it is no longer used. 
+ * Otherwise it is a regular class of the neighbor's class loader,
+ * unloaded together with that class loader.
+ * <p>
+ * When the neighbor's package is not open to dimple, or when system property
+ * {@code dimple.define} is set to {@code inject}, 
+ * the class is injected into the class loader with cglib instead.
+ * @author benyu
+ */
+final class ClassDefiner {
+  private ClassDefiner() {}
+  private static final boolean INJECT = "inject".equals(System.getProperty("dimple.define"));
+  /**
+   * Define a generated class.
+   * @param neighbor the class whose package and class loader the class is defined in.
+   * @param className the name of the generated class.
+   * @param bytecode the byte code.
+   * @return the defined class, already initialized.
+   */
+  static Class<?> defineClass(Class<?> neighbor, String className, byte[] bytecode) {
+    return defineClass(neighbor, className, bytecode, true);
+  }
+  /**
+   * Define a generated class that other generated classes refer to by name,
+   * so it is never a hidden class.
+   * @param neighbor the class whose package and class loader the class is defined in.
+   * @param className the name of the generated class.
+   * @param bytecode the byte code.
+   * @return the defined class, already initialized.
+   */
+  static Class<?> defineNamedClass(Class<?> neighbor, String className, byte[] bytecode) {
+    return defineClass(neighbor, className, bytecode, false);
+  }
+  private static Class<?> defineClass(Class<?> neighbor, String className, byte[] bytecode,
+      boolean hideable) {
+    if(!INJECT) {
+      try {
+        MethodHandles.Lookup lookup = 
+          MethodHandles.privateLookupIn(neighbor, MethodHandles.lookup());
+        if(hideable && lookup.hasFullPrivilegeAccess()) {
+          return lookup.defineHiddenClass(bytecode, true).lookupClass();
+        }
+        return initialize(lookup.defineClass(bytecode));
+      }
+      catch(IllegalAccessException e) {
+        //the package is not open to us.
+      }
+    }
+    return inject(className, bytecode, neighbor.getClassLoader());
+  }
+  private static Class<?> initialize(Class<?> defined) {
+    try {
+      return Class.forName(defined.getName(), true, defined.getClassLoader());
+    }
+    catch(ClassNotFoundException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+  private static Class<?> inject(String className, byte[] bytecode, ClassLoader loader) {
+    try {
+      return initialize(ReflectUtils.defineClass(className, bytecode, loader));
+    } catch(InvocationTargetException e) {
+      throw Throwables.unchecked(e.getTargetException());
+    }
+    catch (Exception e) {
+      throw Throwables.unchecked(e);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package org.codehaus.dimple;
+
+/**
+ * Writes the byte code of one generated class.
+ * <p>
+ * This is the small subset of asm's ClassWriter that dimple uses,
+ * so that classes can also be generated when asm is not in classpath
+ * (see {@link ClassEmitters#newClassEmitter()}).
+ * Opcodes and access flags are the values of asm's Opcodes constants.
+ * Max stack and max locals are always computed by the emitter.
+ * @author benyu
+ */
+interface ClassEmitter {
+  /**
+   * Begin the class.
+   * @param version the class file version. Must be older than 1.6, no stack map frame is written.
+   * @param access the access flags.
+   * @param name the internal name of the class.
+   * @param superName the internal name of the super class.
+   * @param interfaces the internal names of the interfaces, or null.
+   */
+  void visit(int version, int access, String name, String superName, String[] interfaces);
+  /**
+   * Set the source file name.
+   */
+  void visitSource(String source);
+  /**
+   * Add a field without initial value.
+   */
+  void visitField(int access, String name, String descriptor);
+  /**
+   * Add a method.
+   * @param access the access flags.
+   * @param name the method name.
+   * @param descriptor the method descriptor.
+   * @param exceptions the internal names of the declared exceptions, or null.
+   * @return the MethodEmitter to write the code with.
+   */
+  MethodEmitter visitMethod(int access, String name, String descriptor, String[] exceptions);
+  /**
+   * End the class.
+   */
+  void visitEnd();
+  /**
+   * Get the class file bytes. Called after {@link #visitEnd()}.
+   */
+  byte[] toByteArray();
+}
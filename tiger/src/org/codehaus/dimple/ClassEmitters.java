@@ -0,0 +1,37 @@
+package org.codehaus.dimple;
+
+/**
+ * Factory of {@link ClassEmitter} objects.
+ * <p>
+ * asm is used when it is in classpath. Otherwise the built-in 
+ * {@link SimpleClassEmitter} is used, so that the generated fast paths
+ * do not depend on asm.
+ * Setting system property {@code dimple.emitter} to {@code builtin}
+ * selects the built-in emitter even if asm is available.
+ * @author benyu
+ */
+final class ClassEmitters {
+  private ClassEmitters() {}
+  private static final boolean ASM_AVAILABLE = isAsmAvailable();
+  private static boolean isAsmAvailable() {
+    try {
+      Class.forName("org.objectweb.asm.ClassWriter", false, ClassEmitters.class.getClassLoader());
+      return true;
+    }
+    catch(ClassNotFoundException e) {
+      return false;
+    }
+    catch(LinkageError e) {
+      return false;
+    }
+  }
+  /**
+   * Create a ClassEmitter for one generated class.
+   */
+  static ClassEmitter newClassEmitter() {
+    if(ASM_AVAILABLE && !"builtin".equals(System.getProperty("dimple.emitter"))) {
+      return new AsmClassEmitter();
+    }
+    return new SimpleClassEmitter();
+  }
+}
@@ -0,0 +1,20 @@
+package org.codehaus.dimple;
+
+/**
+ * A position in the code written by a {@link MethodEmitter}.
+ * @author benyu
+ */
+final class CodeLabel {
+  /*
+   * the offset in the code, -1 until the label is visited.
+   */
+  int position = -1;
+  /*
+   * the stack depth at this position, -1 if unknown yet.
+   */
+  int stackDepth = -1;
+  /*
+   * the counterpart of this label in asm, if asm is used.
+   */
+  Object asmLabel;
+}
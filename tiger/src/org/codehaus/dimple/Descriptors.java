@@ -0,0 +1,123 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Names, descriptors and type dependent opcodes of classes in the JVM format.
+ * <p>
+ * Only compile time constants of asm are used, so this class does not need asm at runtime.
+ * @author benyu
+ */
+final class Descriptors {
+  private Descriptors() {}
+  /**
+   * Get the internal name such as "java/lang/String". 
+   * For arrays, this is the descriptor.
+   */
+  static String getInternalName(Class<?> type) {
+    return type.getName().replace('.', '/');
+  }
+  /**
+   * Get the descriptor such as "Ljava/lang/String;" or "I".
+   */
+  static String getDescriptor(Class<?> type) {
+    if(type.isPrimitive()) {
+      return String.valueOf(getPrimitiveDescriptor(type));
+    }
+    if(type.isArray()) {
+      return getInternalName(type);
+    }
+    return "L" + getInternalName(type) + ";";
+  }
+  private static char getPrimitiveDescriptor(Class<?> type) {
+    if(int.class.equals(type)) return 'I';
+    if(void.class.equals(type)) return 'V';
+    if(boolean.class.equals(type)) return 'Z';
+    if(byte.class.equals(type)) return 'B';
+    if(char.class.equals(type)) return 'C';
+    if(short.class.equals(type)) return 'S';
+    if(double.class.equals(type)) return 'D';
+    if(float.class.equals(type)) return 'F';
+    return 'J';
+  }
+  static String getMethodDescriptor(Class<?> returnType, Class<?>[] parameterTypes) {
+    StringBuilder buf = new StringBuilder("(");
+    for(Class<?> parameterType : parameterTypes) {
+      buf.append(getDescriptor(parameterType));
+    }
+    return buf.append(')').append(getDescriptor(returnType)).toString();
+  }
+  static String getMethodDescriptor(Method mtd) {
+    return getMethodDescriptor(mtd.getReturnType(), mtd.getParameterTypes());
+  }
+  static String getConstructorDescriptor(Constructor<?> ctor) {
+    return getMethodDescriptor(void.class, ctor.getParameterTypes());
+  }
+  /**
+   * Get the number of local variable or stack slots a value of the type takes.
+   */
+  static int getSize(Class<?> type) {
+    if(void.class.equals(type)) return 0;
+    return long.class.equals(type) || double.class.equals(type)?2:1;
+  }
+  /**
+   * Get the xLOAD opcode for the type.
+   */
+  static int getLoadOpcode(Class<?> type) {
+    return Opcodes.ILOAD + getOpcodeOffset(type);
+  }
+  /**
+   * Get the xRETURN opcode for the type.
+   */
+  static int getReturnOpcode(Class<?> type) {
+    if(void.class.equals(type)) return Opcodes.RETURN;
+    return Opcodes.IRETURN + getOpcodeOffset(type);
+  }
+  //ILOAD, LLOAD, FLOAD, DLOAD, ALOAD are consecutive. So are the returns.
+  private static int getOpcodeOffset(Class<?> type) {
+    if(!type.isPrimitive()) return 4;
+    if(long.class.equals(type)) return 1;
+    if(float.class.equals(type)) return 2;
+    if(double.class.equals(type)) return 3;
+    return 0;
+  }
+  /**
+   * Get the number of slots taken by the parameters of a method descriptor.
+   */
+  static int getParameterSize(String descriptor) {
+    int size = 0;
+    int i = 1;
+    while(descriptor.charAt(i) != ')') {
+      char c = descriptor.charAt(i);
+      if(c=='J' || c=='D') {
+        size += 2;
+        i++;
+        continue;
+      }
+      while(descriptor.charAt(i)=='[') i++;
+      if(descriptor.charAt(i)=='L') {
+        i = descriptor.indexOf(';', i);
+      }
+      i++;
+      size++;
+    }
+    return size;
+  }
+  /**
+   * Get the number of slots taken by the return value of a method descriptor.
+   */
+  static int getReturnSize(String descriptor) {
+    return getSize(descriptor.substring(descriptor.indexOf(')')+1));
+  }
+  /**
+   * Get the number of slots taken by a value of a field descriptor.
+   */
+  static int getSize(String descriptor) {
+    char c = descriptor.charAt(0);
+    if(c=='V') return 0;
+    return c=='J' || c=='D'?2:1;
+  }
+}
@@ -0,0 +1,47 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.Method;
+
+/**
+ * Determines how a dynamic proxy created by {@link Implementor} calls
+ * the methods of the impl class and of the default delegate.
+ * <p>
+ * The strategy does not change what the proxy does, only how fast it does it.
+ * @author benyu
+ */
+public enum DispatchStrategy {
+  /**
+   * Call methods with {@link Method#invoke(Object, Object[])}.
+   */
+  REFLECTION {
+    MethodInvoker getInvoker(Class<?> owner, Method mtd) {
+      return MethodInvokers.reflective(mtd);
+    }
+  },
+  /**
+   * Call methods through byte code generated for each class.
+   * <p>
+   * asm and cglib jar files have to be in classpath.
+   * Reflection is used otherwise.
+   */
+  GENERATED {
+    MethodInvoker getInvoker(Class<?> owner, Method mtd) {
+      return MethodInvokers.generated(owner, mtd);
+    }
+  },
+  /**
+   * Call methods through {@link java.lang.invoke.MethodHandle}.
+   * <p>
+   * No byte code is generated by dimple. 
+   * This can be used when defining classes at runtime is not allowed.
+   */
+  METHOD_HANDLE {
+    MethodInvoker getInvoker(Class<?> owner, Method mtd) {
+      return MethodInvokers.methodHandle(mtd);
+    }
+  };
+  /**
+   * Get the MethodInvoker to call <i>mtd</i> on instances of <i>owner</i>.
+   */
+  abstract MethodInvoker getInvoker(Class<?> owner, Method mtd);
+}
@@ -26,6 +26,11 @@ import java.lang.annotation.Target;
  * Indicates that a method or methods declared in a class are used
  * for dynamic implementation of interface(s).
  * <p>
+ * When a class annotated with Implement names the types it implements,
+ * {@link ImplementProcessor} checks the methods at compile time,
+ * and generates the interceptors of the interfaces among them,
+ * which {@link Implementor#generateInterceptor(Class)} uses instead of generating byte code.
+ * <p>
  * @author Ben Yu
  * Dec 17, 2006 6:30:27 PM
  */
@@ -33,5 +38,9 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD, ElementType.TYPE})
 public @interface Implement {
-
+  /**
+   * The types implemented by the annotated class.
+   * Ignored on methods.
+   */
+  Class<?>[] value() default {};
 }
@@ -0,0 +1,501 @@
+package org.codehaus.dimple;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Checks the classes annotated with {@link Implement} that name the types they implement,
+ * and generates the source of their interceptors.
+ * <p>
+ * The methods are checked the same way as {@link Implementor#checkImplementingMethods(Class...)}
+ * does at runtime, and failures are reported as compile errors.
+ * <p>
+ * For each implemented interface, an interceptor and its reusable variant are generated
+ * next to the annotated class, in plain Java:
+ * methods implemented by the annotated class call it directly,
+ * and the other methods call the intercepted object.
+ * When an interceptor cannot be written in plain Java, for example because the
+ * annotated class throws checked exceptions the interface does not declare,
+ * a note is reported and the interceptor is generated at runtime as before.
+ * <p>
+ * The processor is registered as a service, so javac runs it when dimple is in the class path.
+ * @author benyu
+ */
+public class ImplementProcessor extends AbstractProcessor {
+  private final Set<String> generated = new HashSet<String>();
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(Implement.class.getName());
+  }
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+    for(Element element : env.getElementsAnnotatedWith(Implement.class)) {
+      if(element.getKind() == ElementKind.CLASS) {
+        process((TypeElement)element);
+      }
+    }
+    return false;
+  }
+  private void process(TypeElement impl) {
+    final List<TypeElement> types = getImplementedTypes(impl);
+    if(types.isEmpty() || !checkImplementingMethods(impl, types)) return;
+    for(TypeElement type : types) {
+      final String reason = generateInterceptors(impl, type);
+      if(reason != null) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+            "interceptor of " + type + " is generated at runtime: " + reason, impl);
+      }
+    }
+  }
+  private List<TypeElement> getImplementedTypes(TypeElement impl) {
+    final List<TypeElement> types = new ArrayList<TypeElement>();
+    for(AnnotationMirror annotation : impl.getAnnotationMirrors()) {
+      final TypeElement annotationType = (TypeElement)annotation.getAnnotationType().asElement();
+      if(!annotationType.getQualifiedName().contentEquals(Implement.class.getName())) continue;
+      for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+          : annotation.getElementValues().entrySet()) {
+        if(!entry.getKey().getSimpleName().contentEquals("value")) continue;
+        for(Object value : (List<?>)entry.getValue().getValue()) {
+          final Object type = ((AnnotationValue)value).getValue();
+          if(type instanceof DeclaredType) {
+            types.add((TypeElement)((DeclaredType)type).asElement());
+          }
+        }
+      }
+    }
+    return types;
+  }
+
+  /*
+   * Methods annotated with Implement, or declared in a class annotated with Implement,
+   * must implement some method.
+   */
+  private boolean checkImplementingMethods(TypeElement impl, List<TypeElement> types) {
+    final List<ExecutableElement> implemented = new ArrayList<ExecutableElement>();
+    for(TypeElement type : types) {
+      implemented.addAll(getPublicMethods(type));
+    }
+    for(ExecutableElement mtd : getPublicMethods(getObjectElement())) {
+      if(isObjectMethodSignature(mtd)) {
+        implemented.add(mtd);
+      }
+    }
+    boolean valid = true;
+    for(ExecutableElement mtd : getPublicMethods(impl)) {
+      if(!isMustUse(mtd) || mtd.getEnclosingElement().equals(getObjectElement())) continue;
+      final ExecutableElement target = findImplemented(mtd, implemented);
+      if(target == null) {
+        error(impl, mtd, toString(mtd) + " is not used to implement anything.");
+        valid = false;
+      }
+      else if(!isReturnTypeCompatible(mtd.getReturnType(), target.getReturnType())) {
+        error(impl, mtd, toString(mtd) + " is used to implement "
+            + toString(target) + " with incompatible return type");
+        valid = false;
+      }
+    }
+    return valid;
+  }
+  private static boolean isMustUse(ExecutableElement mtd) {
+    return mtd.getAnnotation(Implement.class) != null
+      || mtd.getEnclosingElement().getAnnotation(Implement.class) != null;
+  }
+  private static boolean isObjectMethodSignature(ExecutableElement mtd) {
+    final String name = mtd.getSimpleName().toString();
+    final int params = mtd.getParameters().size();
+    return (params==1 && "equals".equals(name))
+      || (params==0 && ("hashCode".equals(name) || "toString".equals(name)));
+  }
+  private ExecutableElement findImplemented(ExecutableElement mtd,
+      List<ExecutableElement> implemented) {
+    for(ExecutableElement candidate : implemented) {
+      if(candidate.getSimpleName().equals(mtd.getSimpleName())
+          && isParamsCompatible(mtd, candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+  private void error(TypeElement impl, ExecutableElement mtd, String message) {
+    //inherited methods have no position in the annotated class.
+    final Element position = mtd.getEnclosingElement().equals(impl)?mtd:impl;
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, position);
+  }
+
+  /*
+   * Generate the interceptor and its reusable variant.
+   * Returns why they are not generated, or null if generated.
+   */
+  private String generateInterceptors(TypeElement impl, TypeElement type) {
+    if(type.getKind() != ElementKind.INTERFACE) {
+      return "not an interface";
+    }
+    final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(impl);
+    if(impl.getNestingKind() != NestingKind.TOP_LEVEL
+        && impl.getNestingKind() != NestingKind.MEMBER) {
+      return impl + " is a local class";
+    }
+    if(!isAccessibleFrom(impl, pkg)) {
+      return impl + " is private";
+    }
+    if(!isAccessibleFrom(type, pkg)) {
+      return type + " is not accessible from " + pkg;
+    }
+    final StringBuilder methods = new StringBuilder();
+    for(ExecutableElement mtd : getInterfaceMethods(type)) {
+      final ExecutableElement overrider = lookupImplementingMethod(impl, mtd);
+      if(overrider != null) {
+        final String reason = checkOverrider(overrider, mtd, pkg);
+        if(reason != null) return reason;
+      }
+      appendMethod(methods, impl, type, mtd, overrider);
+    }
+    try {
+      writeInterceptor(impl, type, methods, false);
+      writeInterceptor(impl, type, methods, true);
+    }
+    catch(IOException e) {
+      return e.getMessage();
+    }
+    return null;
+  }
+  /*
+   * The abstract and default methods of an interface, one per erased signature.
+   */
+  private List<ExecutableElement> getInterfaceMethods(TypeElement type) {
+    final Map<String, ExecutableElement> methods = new LinkedHashMap<String, ExecutableElement>();
+    for(ExecutableElement mtd : ElementFilter.methodsIn(
+        processingEnv.getElementUtils().getAllMembers(type))) {
+      final Set<Modifier> modifiers = mtd.getModifiers();
+      if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)
+          || !mtd.getEnclosingElement().getKind().isInterface()) {
+        continue;
+      }
+      final StringBuilder signature = new StringBuilder(mtd.getSimpleName());
+      for(VariableElement param : mtd.getParameters()) {
+        signature.append(',').append(erasure(param.asType()));
+      }
+      if(!methods.containsKey(signature.toString())) {
+        methods.put(signature.toString(), mtd);
+      }
+    }
+    return new ArrayList<ExecutableElement>(methods.values());
+  }
+  /*
+   * The same method Implementor.lookupImplementingMethod() finds at runtime:
+   * the compatible public method with the deepest parameter types.
+   */
+  private ExecutableElement lookupImplementingMethod(TypeElement impl, ExecutableElement mtd) {
+    final List<ExecutableElement> suite = new ArrayList<ExecutableElement>();
+    for(ExecutableElement candidate : getPublicMethods(impl)) {
+      if(candidate.getSimpleName().equals(mtd.getSimpleName())
+          && isParamsCompatible(candidate, mtd)) {
+        suite.add(candidate);
+      }
+    }
+    if(suite.isEmpty()) return null;
+    Collections.sort(suite, new Comparator<ExecutableElement>() {
+      public int compare(ExecutableElement m1, ExecutableElement m2) {
+        final long depth1 = getHierarchyDepthSum(m1);
+        final long depth2 = getHierarchyDepthSum(m2);
+        return depth1>depth2?-1:(depth1<depth2?1:0);
+      }
+    });
+    return suite.get(0);
+  }
+  private String checkOverrider(ExecutableElement overrider, ExecutableElement mtd,
+      PackageElement pkg) {
+    if(!isAccessibleFrom((TypeElement)overrider.getEnclosingElement(), pkg)) {
+      return overrider.getEnclosingElement() + " is not accessible from " + pkg;
+    }
+    if(!isReturnTypeCompatible(overrider.getReturnType(), mtd.getReturnType())) {
+      return toString(overrider) + " has incompatible return type";
+    }
+    for(TypeMirror thrown : overrider.getThrownTypes()) {
+      if(isChecked(thrown) && !isDeclared(thrown, mtd)) {
+        return toString(overrider) + " throws " + thrown;
+      }
+    }
+    return null;
+  }
+  private boolean isChecked(TypeMirror thrown) {
+    return !isSubtype(thrown, RuntimeException.class) && !isSubtype(thrown, Error.class);
+  }
+  private boolean isDeclared(TypeMirror thrown, ExecutableElement mtd) {
+    for(TypeMirror declared : mtd.getThrownTypes()) {
+      if(processingEnv.getTypeUtils().isSubtype(erasure(thrown), erasure(declared))) {
+        return true;
+      }
+    }
+    return false;
+  }
+  private boolean isSubtype(TypeMirror type, Class<?> c) {
+    return processingEnv.getTypeUtils().isSubtype(erasure(type),
+        processingEnv.getElementUtils().getTypeElement(c.getName()).asType());
+  }
+
+  /*
+   * public R m(P0 a0, ...) throws E... {
+   *   return overrider.m(a0, ...);
+   * }
+   * or
+   * public R m(P0 a0, ...) throws E... {
+   *   if(interceptee == null) {
+   *     throw new UnsupportedOperationException("public abstract R Type.m(P0,...)");
+   *   }
+   *   return interceptee.m(a0, ...);
+   * }
+   */
+  private void appendMethod(StringBuilder buf, TypeElement impl, TypeElement type,
+      ExecutableElement mtd, ExecutableElement overrider) {
+    final boolean isVoid = mtd.getReturnType().getKind() == TypeKind.VOID;
+    final String name = mtd.getSimpleName().toString();
+    buf.append("  public ").append(erasure(mtd.getReturnType())).append(' ')
+      .append(name).append('(');
+    final StringBuilder args = new StringBuilder();
+    final List<? extends VariableElement> params = mtd.getParameters();
+    for(int i=0; i<params.size(); i++) {
+      if(i > 0) {
+        buf.append(", ");
+        args.append(", ");
+      }
+      buf.append(erasure(params.get(i).asType())).append(" a").append(i);
+      args.append('a').append(i);
+    }
+    buf.append(')');
+    final List<? extends TypeMirror> thrown = mtd.getThrownTypes();
+    for(int i=0; i<thrown.size(); i++) {
+      buf.append(i==0?" throws ":", ").append(erasure(thrown.get(i)));
+    }
+    buf.append(" {\n");
+    final String ret = isVoid?"    ":"    return ";
+    if(overrider != null) {
+      final String target = overrider.getModifiers().contains(Modifier.STATIC)
+        ?impl.getQualifiedName().toString():"overrider";
+      buf.append(ret).append(target).append('.').append(overrider.getSimpleName())
+        .append('(').append(args).append(");\n");
+    }
+    else {
+      buf.append("    if(interceptee == null) {\n");
+      if(mtd.isDefault()) {
+        buf.append("  ").append(ret).append(type.getQualifiedName()).append(".super.")
+          .append(name).append('(').append(args).append(");\n");
+        if(isVoid) buf.append("      return;\n");
+      }
+      else if(isObjectMethodSignature(mtd)) {
+        buf.append("  ").append(ret).append("super.")
+          .append(name).append('(').append(args).append(");\n");
+        if(isVoid) buf.append("      return;\n");
+      }
+      else {
+        buf.append("      throw new UnsupportedOperationException(\"")
+          .append(toRuntimeString(mtd)).append("\");\n");
+      }
+      buf.append("    }\n");
+      buf.append(ret).append("interceptee.").append(name)
+        .append('(').append(args).append(");\n");
+    }
+    buf.append("  }\n");
+  }
+  private void writeInterceptor(TypeElement impl, TypeElement type,
+      CharSequence methods, boolean reusable) throws IOException {
+    final String className = PrecompiledInterceptors.getClassName(
+        processingEnv.getElementUtils().getBinaryName(impl).toString(),
+        processingEnv.getElementUtils().getBinaryName(type).toString(), reusable);
+    if(!generated.add(className)) return;
+    final int dot = className.lastIndexOf('.');
+    final String simpleName = className.substring(dot+1);
+    final String typeName = type.getQualifiedName().toString();
+    final String implName = impl.getQualifiedName().toString();
+    final String modifier = reusable?"private ":"private final ";
+    final StringBuilder buf = new StringBuilder();
+    buf.append("/* Generated by ").append(ImplementProcessor.class.getName())
+      .append(" from ").append(implName).append(". Do not edit. */\n");
+    if(dot > 0) {
+      buf.append("package ").append(className.substring(0, dot)).append(";\n\n");
+    }
+    buf.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+    buf.append("public final class ").append(simpleName).append(" implements ")
+      .append(typeName).append(", ")
+      .append(reusable?InternalDimpleReusableInterceptor.class.getName()
+          :InternalDimpleInterceptor.class.getName())
+      .append(" {\n");
+    buf.append("  ").append(modifier).append(typeName).append(" interceptee;\n");
+    buf.append("  ").append(modifier).append(implName).append(" overrider;\n");
+    buf.append("  public ").append(simpleName).append("(Object interceptee, Object overrider) {\n");
+    buf.append("    this.interceptee = (").append(typeName).append(")interceptee;\n");
+    buf.append("    this.overrider = (").append(implName).append(")overrider;\n");
+    buf.append("  }\n");
+    buf.append("  public Object newDimpleInterceptor(Object interceptee, Object overrider) {\n");
+    buf.append("    return new ").append(simpleName).append("(interceptee, overrider);\n");
+    buf.append("  }\n");
+    if(reusable) {
+      buf.append("  public void rebindDimpleInterceptor(Object interceptee, Object overrider) {\n");
+      buf.append("    this.interceptee = (").append(typeName).append(")interceptee;\n");
+      buf.append("    this.overrider = (").append(implName).append(")overrider;\n");
+      buf.append("  }\n");
+    }
+    buf.append(methods);
+    buf.append("}\n");
+    final Writer writer = processingEnv.getFiler().createSourceFile(className, impl).openWriter();
+    try {
+      writer.write(buf.toString());
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private List<ExecutableElement> getPublicMethods(TypeElement type) {
+    final List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+    for(ExecutableElement mtd : ElementFilter.methodsIn(
+        processingEnv.getElementUtils().getAllMembers(type))) {
+      if(mtd.getModifiers().contains(Modifier.PUBLIC)) {
+        methods.add(mtd);
+      }
+    }
+    return methods;
+  }
+  private TypeElement getObjectElement() {
+    return processingEnv.getElementUtils().getTypeElement(Object.class.getName());
+  }
+  /*
+   * Same as TypingUtils.isParamsCompatible() on the erased parameter types.
+   */
+  private boolean isParamsCompatible(ExecutableElement with, ExecutableElement implemented) {
+    final List<? extends VariableElement> withParams = with.getParameters();
+    final List<? extends VariableElement> implementedParams = implemented.getParameters();
+    if(withParams.size() != implementedParams.size()) return false;
+    for(int i=0; i<withParams.size(); i++) {
+      if(!isAssignableFrom(withParams.get(i).asType(), implementedParams.get(i).asType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+  /*
+   * Same as TypingUtils.isReturnTypeCompatible() on the erased return types.
+   */
+  private boolean isReturnTypeCompatible(TypeMirror with, TypeMirror implemented) {
+    if(implemented.getKind() == TypeKind.VOID) return true;
+    if(with.getKind() == TypeKind.VOID) return false;
+    return isAssignableFrom(implemented, with);
+  }
+  /*
+   * Same as Class.isAssignableFrom() on the erased types.
+   */
+  private boolean isAssignableFrom(TypeMirror to, TypeMirror from) {
+    to = erasure(to);
+    from = erasure(from);
+    if(to.getKind().isPrimitive() || from.getKind().isPrimitive()) {
+      return processingEnv.getTypeUtils().isSameType(to, from);
+    }
+    return processingEnv.getTypeUtils().isSubtype(from, to);
+  }
+  private TypeMirror erasure(TypeMirror type) {
+    return processingEnv.getTypeUtils().erasure(type);
+  }
+  /*
+   * Same as TypingUtils.getHierarchyDepthSum() on the erased parameter types.
+   */
+  private long getHierarchyDepthSum(ExecutableElement mtd) {
+    long sum = 0;
+    for(VariableElement param : mtd.getParameters()) {
+      sum += getHierarchyDepth(erasure(param.asType()));
+    }
+    return sum;
+  }
+  private int getHierarchyDepth(TypeMirror type) {
+    if(type.getKind().isPrimitive()) return 1;
+    //the super class of an array is Object, its interfaces are Cloneable and Serializable.
+    if(type.getKind() == TypeKind.ARRAY) return 2;
+    if(type.getKind() != TypeKind.DECLARED) return 0;
+    final TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+    if(element.equals(getObjectElement())) return 0;
+    int depth = 1;
+    for(TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+      depth = Math.max(depth, 1+getHierarchyDepth(erasure(supertype)));
+    }
+    return depth;
+  }
+  private boolean isAccessibleFrom(TypeElement type, PackageElement pkg) {
+    for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+      final Set<Modifier> modifiers = e.getModifiers();
+      if(modifiers.contains(Modifier.PRIVATE)) return false;
+      if(!modifiers.contains(Modifier.PUBLIC)
+          && !processingEnv.getElementUtils().getPackageOf(e).equals(pkg)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  private static String toString(ExecutableElement mtd) {
+    return mtd.getEnclosingElement() + "." + mtd;
+  }
+  /*
+   * Same as Method.toString() of an abstract interface method,
+   * which the runtime generated stub throws with.
+   */
+  private String toRuntimeString(ExecutableElement mtd) {
+    final StringBuilder buf = new StringBuilder("public abstract ");
+    buf.append(getTypeName(mtd.getReturnType())).append(' ')
+      .append(getBinaryName((TypeElement)mtd.getEnclosingElement())).append('.')
+      .append(mtd.getSimpleName()).append('(');
+    final List<? extends VariableElement> params = mtd.getParameters();
+    for(int i=0; i<params.size(); i++) {
+      if(i > 0) buf.append(',');
+      buf.append(getTypeName(params.get(i).asType()));
+    }
+    buf.append(')');
+    final List<? extends TypeMirror> thrown = mtd.getThrownTypes();
+    for(int i=0; i<thrown.size(); i++) {
+      buf.append(i==0?" throws ":",").append(getTypeName(thrown.get(i)));
+    }
+    return buf.toString();
+  }
+  /*
+   * Same as Class.getTypeName() of the erased type.
+   */
+  private String getTypeName(TypeMirror type) {
+    final TypeMirror erased = erasure(type);
+    if(erased.getKind() == TypeKind.ARRAY) {
+      return getTypeName(((ArrayType)erased).getComponentType()) + "[]";
+    }
+    if(erased.getKind() == TypeKind.DECLARED) {
+      return getBinaryName((TypeElement)((DeclaredType)erased).asElement());
+    }
+    return erased.toString();
+  }
+  private String getBinaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+}
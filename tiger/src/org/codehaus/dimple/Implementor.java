@@ -16,20 +16,27 @@
 
 package org.codehaus.dimple;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 /**
  * This class is used to create implementation of interface(s) dynamically.
  * <p>
@@ -53,32 +60,29 @@ import java.util.WeakHashMap;
  */
 public class Implementor<ImplClass> implements Serializable {
   /**
-   * Equivalent as new Implementor(with.getClass()).implementWithDefaultHandler(itf, with, defaultHandler)
+   * Equivalent as Implementor.getCachedInstance(with.getClass()).implementWithDefaultHandler(itf, with, defaultHandler)
    * <p>
    * This method is a convenience shortcut.
-   * As the constructor of Implementor may be expensive, it is recommended to create an Implementor object once
-   * and then use it repeatedly.
+   * The Implementor object is shared through {@link #getCachedInstance(Class)}.
    */
   public static <T, ImplClass> T proxyWithDefaultHandler(Class<T> asType, ImplClass with, InvocationHandler defaultHandler) {
     return getInstanceForImplObject(with).implementWithDefaultHandler(asType, with, defaultHandler);
   }
   /**
-   * Equivalent as new Implementor(with.getClass()).implement(asType, with, defaultDelegate)
+   * Equivalent as Implementor.getCachedInstance(with.getClass()).implement(asType, with, defaultDelegate)
    * <p>
    * This method is a convenience shortcut.
-   * As the constructor of Implementor may be expensive, it is recommended to create an Implementor object once
-   * and then use it repeatedly.
+   * The Implementor object is shared through {@link #getCachedInstance(Class)}.
    */
   public static <T, ImplClass> T proxy(Class<T> asType, ImplClass with, T defaultDelegate){
     return getInstanceForImplObject(with).implement(asType, with, defaultDelegate);
   }
   
   /**
-   * Equivalent as new Implementor(with.getClass()).implement(asType)
+   * Equivalent as Implementor.getCachedInstance(with.getClass()).implement(asType)
    * <p>
    * This method is a convenience shortcut.
-   * As the constructor of Implementor may be expensive, it is recommended to create an Implementor object once
-   * and then use it repeatedly. 
+   * The Implementor object is shared through {@link #getCachedInstance(Class)}.
    */
   public static <T, ImplClass> T proxy(Class<T> asType, ImplClass with) {
     return getInstanceForImplObject(with).implement(asType, with);
@@ -86,7 +90,7 @@ public class Implementor<ImplClass> implements Serializable {
 
   @SuppressWarnings("unchecked")
   private static <ImplClass> Implementor<ImplClass> getInstanceForImplObject(ImplClass with){
-    return new Implementor<ImplClass>((Class<ImplClass>)with.getClass());
+    return getCachedInstance((Class<ImplClass>)with.getClass());
   }
   /**
    * create a dynamic proxy that implements <i>asType</i> by calling <i>with</i>
@@ -100,8 +104,10 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public <T> T implement(Class<T> asType, ImplClass with, T defaultDelegate) {
     checkImplementingMethods(asType);
-    return newProxyInstance(asType.getClassLoader(), asType, 
+    final T proxy = newProxyInstance(asType.getClassLoader(), asType, 
         createInvocationHandler(with, defaultDelegate));
+    WarmupManifest.record(WarmupManifest.IMPLEMENT, implClass, asType);
+    return proxy;
   }
   /**
    * create a dynamic proxy that implements <i>asType</i> by calling <i>with</i>
@@ -115,8 +121,10 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public <T> T implementWithDefaultHandler(Class<T> asType, ImplClass with, InvocationHandler defaultHandler) {
     checkImplementingMethods(asType);
-    return newProxyInstance(asType.getClassLoader(), asType, 
+    final T proxy = newProxyInstance(asType.getClassLoader(), asType, 
         createInvocationHandlerWithDefaultHandler(with, defaultHandler));
+    WarmupManifest.record(WarmupManifest.IMPLEMENT, implClass, asType);
+    return proxy;
   }
   /**
    * create a dynamic proxy that implements <i>asType</i> by calling <i>with</i>
@@ -129,8 +137,10 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public <T> T implement(Class<T> asType, ImplClass with){
     checkImplementingMethods(asType);
-    return newProxyInstance(asType.getClassLoader(), asType, 
+    final T proxy = newProxyInstance(asType.getClassLoader(), asType, 
         createInvocationHandler(with));
+    WarmupManifest.record(WarmupManifest.IMPLEMENT, implClass, asType);
+    return proxy;
   }
   /**
    * create an InvocationHandler object by calling <i>instance</i>
@@ -182,7 +192,19 @@ public class Implementor<ImplClass> implements Serializable {
    * @param implClass the class used to implement.
    */
   public Implementor(Class<ImplClass> implClass){
+    this(implClass, DispatchStrategy.GENERATED);
+  }
+  /**
+   * To create an Implementor class.
+   * @param implClass the class used to implement.
+   * @param dispatchStrategy how proxies call the impl class and the default delegate.
+   */
+  public Implementor(Class<ImplClass> implClass, DispatchStrategy dispatchStrategy){
+    if(dispatchStrategy == null) {
+      throw new IllegalArgumentException("dispatch strategy cannot be null");
+    }
     this.implClass = implClass;
+    this.dispatchStrategy = dispatchStrategy;
     addClass(implClass);
     sort();
   }
@@ -195,6 +217,30 @@ public class Implementor<ImplClass> implements Serializable {
   public static <ImplClass> Implementor<ImplClass> instance(Class<ImplClass> implClass){
     return new Implementor<ImplClass>(implClass);
   }
+  /**
+   * Convenience method to create an Implementor object.
+   * @param <ImplClass> the impl class.
+   * @param implClass the iml class object.
+   * @param dispatchStrategy how proxies call the impl class and the default delegate.
+   * @return the Implementor object.
+   */
+  public static <ImplClass> Implementor<ImplClass> instance(Class<ImplClass> implClass, 
+      DispatchStrategy dispatchStrategy){
+    return new Implementor<ImplClass>(implClass, dispatchStrategy);
+  }
+  /**
+   * Get the Implementor object for an impl class from a cache shared by the whole JVM.
+   * <p>
+   * As the constructor of Implementor may be expensive, this method should be used
+   * instead of {@link #instance(Class)} when an Implementor object is not kept around.
+   * The cached object is released when the impl class is unloaded.
+   * @param <ImplClass> the impl class.
+   * @param implClass the iml class object.
+   * @return the Implementor object.
+   */
+  public static <ImplClass> Implementor<ImplClass> getCachedInstance(Class<ImplClass> implClass){
+    return ImplementorCache.getInstance(implClass);
+  }
   public boolean equals(Object obj){
     if(obj instanceof Implementor){
       Implementor other = (Implementor)obj;
@@ -214,32 +260,51 @@ public class Implementor<ImplClass> implements Serializable {
   public Class<ImplClass> getImplClass(){
     return implClass;
   }
-  private static WeakHashMap<Pair<Class, Class>, Interceptor> interceptorCache = 
-    new WeakHashMap<Pair<Class, Class>, Interceptor>();
+  /**
+   * Get the strategy used by proxies to call the impl class and the default delegate.
+   */
+  public DispatchStrategy getDispatchStrategy(){
+    //null if deserialized from an old version.
+    return dispatchStrategy==null?DispatchStrategy.GENERATED:dispatchStrategy;
+  }
   /**
    * Generate byte code to create an interceptor that will intercept objects
    * of <code>interceptedType</code> with objects of <code>implClass</code>.
    * <p>
+   * <code>interceptedType</code> can be an interface or a non-final class.
+   * A class is intercepted by a generated subclass, 
+   * whose constructor calls the super constructor with the fewest parameters
+   * passing null, zero or false. 
+   * That constructor runs again for every interceptor created,
+   * so a class whose constructor has side effects should not be intercepted.
+   * If the constructor rejects these arguments, IllegalArgumentException is thrown.
+   * <p>
+   * Only public methods are intercepted. 
+   * Final, protected and package private methods run on the state of the
+   * interceptor itself, which is left as the super constructor initialized it.
+   * A class with an abstract method that is not public is rejected 
+   * with IllegalArgumentException.
+   * <p>
    * asm and cglib jar files have to be in classpath to use this method.
    * @param <T> the type of object to be intercepted.
    * @param interceptedType the intercepted type.
    * @return the Interceptor instance.
    */
   @SuppressWarnings("unchecked")
-  public <T> Interceptor<T, ImplClass> generateInterceptor(Class<T> interceptedType){
+  public <T> Interceptor<T, ImplClass> generateInterceptor(final Class<T> interceptedType){
     checkImplementingMethods(interceptedType);
-    Pair<Class,Class> key = new Pair<Class,Class>(interceptedType, this.implClass);
-    synchronized(interceptorCache) {
-      Interceptor<T, ImplClass> interceptor = interceptorCache.get(key);
-      if(interceptor!=null) return interceptor;
-      interceptor = InterceptorGenerator.generateInterceptor(interceptedType, implClass, new InterceptorGenerator.MethodMapping(){
-        public Method getOverrrider(Method method) {
-          return lookupImplementingMethod(method);
-        }
-      });
-      interceptorCache.put(key, interceptor);
-      return interceptor;
-    }
+    final Interceptor<T, ImplClass> interceptor = 
+      InterceptorCache.getInterceptor(interceptedType, implClass, new Callable<Interceptor>(){
+      public Interceptor call() {
+        return InterceptorGenerator.generateInterceptor(interceptedType, implClass, new InterceptorGenerator.MethodMapping(){
+          public Method getOverrrider(Method method) {
+            return lookupImplementingMethod(method);
+          }
+        });
+      }
+    });
+    WarmupManifest.record(WarmupManifest.INTERCEPT, implClass, interceptedType);
+    return interceptor;
   }
   /**
    * Generate byte code to create an interceptor that will intercept objects
@@ -253,10 +318,66 @@ public class Implementor<ImplClass> implements Serializable {
    * @return the interceptor.
    */
   public static <T, Impl> Interceptor<T, Impl> generateInterceptor(Class<T> interceptedType, Class<Impl> implClass) {
-    return instance(implClass).generateInterceptor(interceptedType);
+    return getCachedInstance(implClass).generateInterceptor(interceptedType);
+  }
+  /**
+   * Generate the interceptors of many pairs concurrently.
+   * <p>
+   * Each pair is generated by a task of the common {@link ForkJoinPool},
+   * and cached the same way as by {@link #generateInterceptor(Class, Class)}.
+   * This method returns when all interceptors are generated. 
+   * If any of them fails, the first failure is thrown after the others are done.
+   * @param interceptedTypes the types to be intercepted, by the impl class used to intercept them.
+   * @return the interceptors, in the iteration order of the pairs.
+   */
+  public static List<Interceptor<?, ?>> generateInterceptors(
+      Map<Class<?>, ? extends Collection<Class<?>>> interceptedTypes) {
+    final List<ForkJoinTask<Interceptor<?, ?>>> tasks = 
+      new ArrayList<ForkJoinTask<Interceptor<?, ?>>>();
+    for(Map.Entry<Class<?>, ? extends Collection<Class<?>>> entry : interceptedTypes.entrySet()) {
+      final Implementor<?> implementor = getCachedInstance(entry.getKey());
+      for(final Class<?> interceptedType : entry.getValue()) {
+        tasks.add(ForkJoinPool.commonPool().submit(new Callable<Interceptor<?, ?>>() {
+          public Interceptor<?, ?> call() {
+            return implementor.generateInterceptor(interceptedType);
+          }
+        }));
+      }
+    }
+    for(ForkJoinTask<?> task : tasks) {
+      task.quietlyJoin();
+    }
+    final List<Interceptor<?, ?>> interceptors = new ArrayList<Interceptor<?, ?>>(tasks.size());
+    for(ForkJoinTask<Interceptor<?, ?>> task : tasks) {
+      interceptors.add(task.join());
+    }
+    return interceptors;
   }
   /**
-   * Convenience method to intercept an instance of an interface.
+   * Resolve up front the types listed in a warm-up manifest,
+   * with tasks of the common {@link ForkJoinPool}.
+   * <p>
+   * A manifest is recorded by running with system property <code>dimple.manifest.record</code>
+   * set to the manifest file. It lists the types resolved by {@link #implement(Class, Object)},
+   * {@link #generateInterceptor(Class)}, {@link #override(Object, Object)} and their variants.
+   * Preloading generates the interceptors, and resolves the method bindings of the
+   * Implementor objects returned by {@link #getCachedInstance(Class)}.
+   * Classes are loaded by the context class loader of the calling thread.
+   * Classes no longer found are skipped.
+   * @param manifest the manifest file.
+   * @return the task that completes when all listed types are resolved,
+   * or with the first failure.
+   * @throws IOException if the manifest cannot be read.
+   */
+  public static ForkJoinTask<?> preload(Path manifest) throws IOException {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if(loader == null) {
+      loader = Implementor.class.getClassLoader();
+    }
+    return WarmupManifest.preload(manifest, loader);
+  }
+  /**
+   * Convenience method to intercept an instance of an interface or a non-final class.
    * Equivalent to <pre>
    * generateInterceptor(interceptedType, with.getClass()).intercept(intercepted, with);
    * </pre>
@@ -274,7 +395,25 @@ public class Implementor<ImplClass> implements Serializable {
     return (T)interceptor.intercept(intercepted, with);
   }
   /**
-   * Convenience method to stub an interface.
+   * Convenience method to intercept a long-living instance of an interface or a non-final class
+   * with an interceptor class generated for the two objects.
+   * Equivalent to <pre>
+   * generateInterceptor(interceptedType, with.getClass()).specialize(intercepted, with);
+   * </pre>
+   * @param <T> the interface type to be intercepted.
+   * @param interceptedType the intercepted type.
+   * @param intercepted the object to be intercepted.
+   * @param with the object used to intercept.
+   * @return the intercepted instance.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T generateSpecializedInterceptor(Class<T> interceptedType, 
+      T intercepted, Object with) {
+    Interceptor interceptor = generateInterceptor(interceptedType, with.getClass());
+    return (T)interceptor.specialize(intercepted, with);
+  }
+  /**
+   * Convenience method to stub an interface or a non-final class.
    * Equivalent to <pre>
    * generateInterceptor(interceptedType, with.getClass()).stub(with);
    * </pre>
@@ -290,6 +429,42 @@ public class Implementor<ImplClass> implements Serializable {
     Interceptor interceptor = generateInterceptor(stubbedType, with.getClass());
     return (T)interceptor.stub(with);
   }
+  /**
+   * Re-resolve the targets of an interceptor class generated 
+   * with system property <code>dimple.codegen=indy</code>,
+   * for example after the intercepted type or the impl class is redefined.
+   * Instances of the class are re-linked without generating a new class.
+   * Threads already running the old targets may finish with them.
+   * @param interceptorClass the class of the objects returned by the {@link Interceptor}.
+   * @throws IllegalArgumentException if the class was not generated in indy mode.
+   */
+  public static void relink(Class<?> interceptorClass) {
+    getLinkage(interceptorClass).relink();
+  }
+  /**
+   * Re-link one method of an interceptor class generated 
+   * with system property <code>dimple.codegen=indy</code> to a new target.
+   * <p>
+   * The first parameter of the target is the object the method was linked to,
+   * either the intercepted object or the overrider,
+   * unless the method was linked to a static method.
+   * The other parameters are the parameters of <i>method</i>.
+   * @param interceptorClass the class of the objects returned by the {@link Interceptor}.
+   * @param method the method of the intercepted type to re-link.
+   * @param target the new target. It is adapted to the linked type with {@link MethodHandle#asType}.
+   * @throws IllegalArgumentException if the class was not generated in indy mode,
+   * or if <i>method</i> is not linked.
+   */
+  public static void relink(Class<?> interceptorClass, Method method, MethodHandle target) {
+    getLinkage(interceptorClass).relink(method, target);
+  }
+  private static IndyLinkage getLinkage(Class<?> interceptorClass) {
+    final IndyLinkage linkage = IndyLinkage.getLinkage(interceptorClass);
+    if(linkage == null) {
+      throw new IllegalArgumentException(interceptorClass + " is not generated in indy mode");
+    }
+    return linkage;
+  }
   void addClass(Class<?> cls) {
     final boolean force = !Modifier.isPublic(cls.getModifiers());
     final Method[] mtds = cls.getMethods();
@@ -306,8 +481,38 @@ public class Implementor<ImplClass> implements Serializable {
     catch(SecurityException e){}
   }
   private final Class<ImplClass> implClass;
+  private final DispatchStrategy dispatchStrategy;
   private final Map<String, List<MyMethod>> methods = new HashMap<String, List<MyMethod>>();
   private final ArrayList<MyMethod> mustUses = new ArrayList<MyMethod>();
+  /*
+   * bindings of application types are attached to the type declaring the method,
+   * so a shared Implementor does not keep the types of a child class loader alive.
+   */
+  private transient volatile ClassValue<ConcurrentMap<Method, MethodBinding>> bindings;
+  /*
+   * bindings of java.* methods must not be attached to the system classes, 
+   * or the impl class is never unloaded.
+   */
+  private transient volatile ConcurrentMap<Method, MethodBinding> systemBindings;
+  private transient volatile CheckedTypes checkedTypes;
+  private transient volatile CheckedTypes checkedClasses;
+  /*
+   * Remembers the types that passed checkImplementingMethods().
+   * The result is attached to the checked class itself,
+   * so a class from another class loader is checked on its own,
+   * and a failed check is repeated every time.
+   */
+  private final class CheckedTypes extends ClassValue<Boolean> {
+    private final boolean allInterfaces;
+    CheckedTypes(boolean allInterfaces) {
+      this.allInterfaces = allInterfaces;
+    }
+    protected Boolean computeValue(Class<?> type) {
+      checkImplementingMethods(allInterfaces?
+          TypingUtils.getAllInterfaces(type):new Class<?>[]{type});
+      return Boolean.TRUE;
+    }
+  }
   private final class ImplInvocationHandler implements InvocationHandler, Serializable, Ref {
     private static final long serialVersionUID = 7723292911817172565L;
     private final Object instance;
@@ -327,64 +532,113 @@ public class Implementor<ImplClass> implements Serializable {
       return instance;
     }
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-      final Method impl = lookupImplementingMethod(method);
-      if(impl == null) {
-        return invokeDefault(proxy, method, args);
-      }
-      else if((defaultDelegate!=null || defaultHandler!=null)
-          && Object.class.equals(impl.getDeclaringClass())){
-        //forward call for default hashCode/equals/toString
-        return invokeDefault(proxy, method, args);
+      final MethodBinding binding = getBinding(method);
+      if(binding.isDefault(defaultDelegate!=null || defaultHandler!=null)) {
+        return invokeDefault(proxy, binding, args);
       }
       else {
-        return myCall(proxy, impl, args);
+        return myCall(proxy, binding, args);
       }
     }
-    private Object invokeDefault(Object proxy, Method method, Object[] args)
+    private Object invokeDefault(Object proxy, MethodBinding binding, Object[] args)
     throws Throwable {
       if(defaultDelegate != null) {
-        return forwardCall(proxy, defaultDelegate, method, args);
+        return forwardCall(proxy, defaultDelegate, binding, args);
       }
       if(defaultHandler != null) {
-        return defaultHandler.invoke(proxy, method, args);
+        return defaultHandler.invoke(proxy, binding.getImplemented(), args);
+      }
+      else if(isDefaultMethodOf(proxy, binding.getImplemented())) {
+        return InvocationHandler.invokeDefault(proxy, binding.getImplemented(), args);
       }
       else{
         throw new UnsupportedOperationException();
       }
     }
 
-    private Object myCall(Object proxy, final Method mtd, Object[] args) throws IllegalAccessException, Throwable {
-      if(isEqualsMethodCall(mtd, args)){
-        if(Object.class.equals(mtd.getDeclaringClass())){
+    private Object myCall(Object proxy, final MethodBinding binding, Object[] args) throws IllegalAccessException, Throwable {
+      if(binding.isImplementingEquals()){
+        if(binding.isNativeEquals()){
           //the native equals() call.
           return Boolean.valueOf(proxy==args[0]);
         }
         return Boolean.valueOf(instance.equals(unwrap(args[0])));
       }
-      return invokeMethod(instance, mtd, args);
+      return binding.invokeImplementing(instance, args);
     }
     
-    private Object forwardCall(Object proxy, Object obj, final Method mtd, Object[] args) throws IllegalAccessException, Throwable {
-      if(isEqualsMethodCall(mtd, args)){
+    private Object forwardCall(Object proxy, Object obj, final MethodBinding binding, Object[] args) throws IllegalAccessException, Throwable {
+      if(binding.isImplementedEquals()){
         return Boolean.valueOf(obj.equals(unwrap(args[0])));
       }
-      return invokeMethod(obj, mtd, args);
+      return binding.invokeImplemented(obj, args);
     }
   }
-  private static final String EQUALS = "equals";
-  static boolean isEqualsMethodCall(final Method mtd, Object[] args) {
-    return args!=null && args.length==1 && EQUALS.equals(mtd.getName())
-        && Object.class.equals(mtd.getParameterTypes()[0]);
-  }
-  static Object invokeMethod(Object obj, final Method mtd, Object[] args)
-  throws IllegalAccessException, Throwable {
-    try {
-      return mtd.invoke(obj, args);
+  /**
+   * Get the cached binding for an implemented method, resolving it on first use.
+   */
+  MethodBinding getBinding(Method implemented) {
+    final ConcurrentMap<Method, MethodBinding> table = 
+      getBindings(implemented.getDeclaringClass());
+    MethodBinding binding = table.get(implemented);
+    if(binding == null) {
+      binding = new MethodBinding(implClass, getDispatchStrategy(), 
+          implemented, lookupImplementingMethod(implemented));
+      final MethodBinding existing = table.putIfAbsent(implemented, binding);
+      if(existing != null) return existing;
+    }
+    return binding;
+  }
+  private CheckedTypes getCheckedTypes() {
+    CheckedTypes checked = checkedTypes;
+    if(checked == null) {
+      //racing threads may each create one; only the remembered checks are lost.
+      checked = new CheckedTypes(false);
+      checkedTypes = checked;
+    }
+    return checked;
+  }
+  private CheckedTypes getCheckedClasses() {
+    CheckedTypes checked = checkedClasses;
+    if(checked == null) {
+      checked = new CheckedTypes(true);
+      checkedClasses = checked;
+    }
+    return checked;
+  }
+  private ConcurrentMap<Method, MethodBinding> getBindings(Class<?> declaringClass) {
+    if(TypingUtils.isSystemClass(declaringClass)) {
+      ConcurrentMap<Method, MethodBinding> table = systemBindings;
+      if(table == null) {
+        //racing threads may each create a table; only the cached bindings are lost.
+        table = new ConcurrentHashMap<Method, MethodBinding>();
+        systemBindings = table;
+      }
+      return table;
     }
-    catch(InvocationTargetException e){
-      throw e.getTargetException();
+    ClassValue<ConcurrentMap<Method, MethodBinding>> tables = bindings;
+    if(tables == null) {
+      tables = newBindingTables();
+      bindings = tables;
     }
+    return tables.get(declaringClass);
+  }
+  private static ClassValue<ConcurrentMap<Method, MethodBinding>> newBindingTables() {
+    return new ClassValue<ConcurrentMap<Method, MethodBinding>>() {
+      protected ConcurrentMap<Method, MethodBinding> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<Method, MethodBinding>();
+      }
+    };
+  }
+  /*
+   * Whether the default body of mtd can be called through the proxy.
+   * Only proxies of java.lang.reflect.Proxy support that, and only for accessible interfaces.
+   */
+  private static boolean isDefaultMethodOf(Object proxy, Method mtd) {
+    return mtd.isDefault() && Proxy.isProxyClass(proxy.getClass())
+      && Modifier.isPublic(mtd.getDeclaringClass().getModifiers());
   }
+  static final String EQUALS = "equals";
   static Object unwrap(Object obj){
     if(obj==null) return null;
     if(Proxy.isProxyClass(obj.getClass())){
@@ -532,12 +786,13 @@ public class Implementor<ImplClass> implements Serializable {
    * Makes sure that methods defined by ImplClass implement some method
    * in <i>asType</i>.
    * This checking is only performed on methods annotated by Implement.
+   * A successful check is remembered, and not repeated for the same <i>asType</i>.
    * @param asType the interface to implement.
    */
   public void checkImplementingMethods(Class<?> asType)
   throws InvalidReturnTypeException, UnusedMethodException {
     if(mustUses.isEmpty()) return;
-    checkImplementingMethods(new Class<?>[]{asType});
+    getCheckedTypes().get(asType);
   }
   /**
    * Makes sure that methods defined by ImplClass implement some method
@@ -548,7 +803,7 @@ public class Implementor<ImplClass> implements Serializable {
   public void checkImplementingMethods(Class<?>... asTypes)
   throws InvalidReturnTypeException, UnusedMethodException {
     if(mustUses.isEmpty()) return;
-    checkImplementingMethods(TypingUtils.getAllMethodsToImplement(asTypes));
+    checkImplementingMethods(SignatureIndex.getIndexes(asTypes));
   }
   /**
    * To assert that all methods in <i>implClass</i> will properly
@@ -559,7 +814,7 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public static <T> Class<T> implementedBy(Class<T> asType, Class<?> implClass)
   throws InvalidReturnTypeException, UnusedMethodException {
-    TypingUtils.checkImplementingMethods(implClass.getMethods(), TypingUtils.getAllMethodsToImplement(new Class<?>[]{asType}));
+    TypingUtils.checkImplementingMethods(implClass.getMethods(), new Class<?>[]{asType});
     return asType;
   }
   /**
@@ -582,21 +837,15 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public static <ImplClass> Class<ImplClass> willImplement(Class<ImplClass> implClass, Class<?>... asTypes)
   throws InvalidReturnTypeException, UnusedMethodException {
-    TypingUtils.checkImplementingMethods(implClass.getMethods(), TypingUtils.getAllMethodsToImplement(asTypes));
+    TypingUtils.checkImplementingMethods(implClass.getMethods(), asTypes);
     return implClass;
   }
-  void checkImplementingMethods(Method[] implemented)
+  void checkImplementingMethods(SignatureIndex[] implemented)
   throws InvalidReturnTypeException, UnusedMethodException {
-    final Class<?>[][] paramTypesArray = TypingUtils.getParameterTypesArray(implemented);
     for(MyMethod mm : mustUses) {
-      checkImplementingMethods(mm, implemented, paramTypesArray);
+      TypingUtils.checkImplementingMethods(mm.getMethod(), mm.getParameterTypes(), implemented);
     }
   }
-  private static void checkImplementingMethods(MyMethod implementing, Method[] implemented, Class<?>[][] parameterTypesArray)
-  throws InvalidReturnTypeException, UnusedMethodException {
-    TypingUtils.checkImplementingMethods(implementing.getMethod(), implementing.getParameterTypes(), 
-        implemented, parameterTypesArray);
-  }
   /**
    * Overrides an object using methods defined in impl class and the overrider object
    * bound to "this".
@@ -607,15 +856,21 @@ public class Implementor<ImplClass> implements Serializable {
    */
   public final Object override(Object obj, ImplClass overrider){
     Class overriden = obj.getClass();
+    if(!mustUses.isEmpty()) {
+      //all interfaces of the class were checked once.
+      getCheckedClasses().get(overriden);
+    }
     final Class<?>[] itfs = TypingUtils.getAllInterfaces(overriden);
-    checkImplementingMethods(itfs);
-    return Proxy.newProxyInstance(overriden.getClassLoader(), itfs,
+    final Object proxy = Proxy.newProxyInstance(overriden.getClassLoader(), itfs,
         createInvocationHandler(overrider, obj));
+    WarmupManifest.record(WarmupManifest.OVERRIDE, implClass, overriden);
+    return proxy;
   }
 
   /**
    * Overrides an object using the overrider object.
    * All interfaces of <i>obj</i> are implemented by the proxy.
+   * The Implementor object is shared through {@link #getCachedInstance(Class)}.
    * @param obj the object to be overriden.
    * @param overrider the overrider.
    * @return the proxy object.
@@ -623,5 +878,58 @@ public class Implementor<ImplClass> implements Serializable {
   public static Object overrideObject(Object obj, Object overrider){
     return getInstanceForImplObject(overrider).override(obj, overrider);
   }
+  /**
+   * Overrides an object using methods defined in impl class and the overrider object,
+   * with a class generated for the class of <i>obj</i>.
+   * All interfaces of <i>obj</i> are implemented by the generated class,
+   * which calls <i>obj</i> and the overrider directly.
+   * The class is generated once for the class of <i>obj</i>,
+   * so overriding another instance only allocates the returned object.
+   * <p>
+   * Unlike {@link #override(Object, Object)}, the argument of equals() is not unwrapped.
+   * If the class cannot be generated, 
+   * for example because an interface is not accessible from the generated class,
+   * this method falls back to {@link #override(Object, Object)}.
+   * <p>
+   * asm jar file has to be in classpath to use this method.
+   * @param obj the object to be overriden.
+   * @param overrider the overrider.
+   * @return the overriding object.
+   */
+  public final Object generateOverride(Object obj, ImplClass overrider){
+    final Class<?> overriden = obj.getClass();
+    if(!mustUses.isEmpty()) {
+      getCheckedClasses().get(overriden);
+    }
+    final InternalDimpleInterceptor prototype = 
+      InterceptorCache.getOverrider(overriden, implClass, new Callable<InternalDimpleInterceptor>(){
+      public InternalDimpleInterceptor call() {
+        return InterceptorGenerator.generateOverrider(overriden, 
+            TypingUtils.getAllInterfaces(overriden), implClass, 
+            new InterceptorGenerator.MethodMapping(){
+          public Method getOverrrider(Method method) {
+            return lookupImplementingMethod(method);
+          }
+        });
+      }
+    });
+    if(prototype == null) {
+      return override(obj, overrider);
+    }
+    return prototype.newDimpleInterceptor(obj, overrider);
+  }
+  /**
+   * Overrides an object using the overrider object, 
+   * with a class generated for the class of <i>obj</i>.
+   * All interfaces of <i>obj</i> are implemented by the returned object.
+   * The Implementor object is shared through {@link #getCachedInstance(Class)}.
+   * @see #generateOverride(Object, Object)
+   * @param obj the object to be overriden.
+   * @param overrider the overrider.
+   * @return the overriding object.
+   */
+  public static Object generateOverrideObject(Object obj, Object overrider){
+    return getInstanceForImplObject(overrider).generateOverride(obj, overrider);
+  }
   private static final long serialVersionUID = -5648266362433165290L;
 }
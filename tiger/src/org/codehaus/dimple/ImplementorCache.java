@@ -0,0 +1,46 @@
+package org.codehaus.dimple;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class provides caching for Implementor objects of the same impl class.
+ * <p>
+ * The cached Implementor of an application class is attached to the impl class itself,
+ * so lookups never lock and the entry goes away 
+ * together with the class loader of the impl class.
+ * Implementor objects of java.* classes are kept by this class instead,
+ * and go away together with the class loader of dimple.
+ * @author benyu
+ */
+final class ImplementorCache {
+  private ImplementorCache() {}
+  private static final ClassValue<Implementor<?>> cache = new ClassValue<Implementor<?>>() {
+    protected Implementor<?> computeValue(Class<?> implClass) {
+      return Implementor.instance(implClass);
+    }
+  };
+  /*
+   * Implementor objects must not be attached to the system classes, or we are never unloaded.
+   */
+  private static final ConcurrentMap<Class<?>, Implementor<?>> systemCache =
+    new ConcurrentHashMap<Class<?>, Implementor<?>>();
+  /**
+   * Get an instance of Implementor for the impl class.
+   * @param implClass the impl class.
+   * @return the instance that's either from the cache or instantiated.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> Implementor<T> getInstance(Class<T> implClass) {
+    if(!TypingUtils.isSystemClass(implClass)) {
+      return (Implementor<T>)cache.get(implClass);
+    }
+    Implementor<?> implementor = systemCache.get(implClass);
+    if(implementor == null) {
+      implementor = Implementor.instance(implClass);
+      final Implementor<?> existing = systemCache.putIfAbsent(implClass, implementor);
+      if(existing != null) return (Implementor<T>)existing;
+    }
+    return (Implementor<T>)implementor;
+  }
+}
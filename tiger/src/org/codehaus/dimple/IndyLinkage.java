@@ -0,0 +1,151 @@
+package org.codehaus.dimple;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The call sites of one interceptor class generated in "indy" mode.
+ * <p>
+ * Instead of calling the interceptee or the overrider directly,
+ * every generated method calls the dynamic invoker of a {@link MutableCallSite},
+ * held in a static final field of the generated class.
+ * The JIT treats such invokers as constants and inlines through them,
+ * while the targets can still be re-linked without generating a new class.
+ * <p>
+ * The asm version we use cannot emit the invokedynamic instruction,
+ * so the invokers are fetched once by the static initializer 
+ * through {@link InternalDimpleBootstrap} instead.
+ * @author benyu
+ */
+final class IndyLinkage {
+  private static final ConcurrentMap<String, IndyLinkage> pending = 
+    new ConcurrentHashMap<String, IndyLinkage>();
+  /*
+   * attached to the generated class, so that the targets do not keep it alive.
+   */
+  private static final ClassValue<IndyLinkage> linkages = new ClassValue<IndyLinkage>() {
+    protected IndyLinkage computeValue(Class<?> generatedClass) {
+      final String name = generatedClass.getName();
+      //hidden classes have a suffix after '/'.
+      final int suffix = name.indexOf('/');
+      return pending.get(suffix<0?name:name.substring(0, suffix));
+    }
+  };
+  private final String key;
+  private final List<Method> overridden = new ArrayList<Method>();
+  private final List<Method> targets = new ArrayList<Method>();
+  private final List<MutableCallSite> sites = new ArrayList<MutableCallSite>();
+  IndyLinkage(String key) {
+    this.key = key;
+  }
+  String getKey() {
+    return key;
+  }
+  /**
+   * Add a call site.
+   * @param overriddenMethod the method of the generated class.
+   * @param receiverType the type of the receiver, null if the target is static.
+   * @param targetMethod the method the call site links to.
+   * @return the index of the call site.
+   */
+  int addCallSite(Method overriddenMethod, Class<?> receiverType, Method targetMethod) {
+    MethodType siteType = MethodType.methodType(
+        overriddenMethod.getReturnType(), overriddenMethod.getParameterTypes());
+    if(receiverType != null) {
+      siteType = siteType.insertParameterTypes(0, receiverType);
+    }
+    MutableCallSite site = new MutableCallSite(siteType);
+    site.setTarget(getTarget(targetMethod, siteType));
+    overridden.add(overriddenMethod);
+    targets.add(targetMethod);
+    sites.add(site);
+    return sites.size()-1;
+  }
+  int size() {
+    return sites.size();
+  }
+  /**
+   * Get the type of the call site at <i>index</i>.
+   */
+  MethodType getType(int index) {
+    return sites.get(index).type();
+  }
+  /**
+   * Re-link the call site of <i>overriddenMethod</i> to a new target.
+   * Threads already running the old target may finish with it.
+   * @param overriddenMethod the method of the generated class.
+   * @param target the new target, adapted to the type of the call site.
+   */
+  void relink(Method overriddenMethod, MethodHandle target) {
+    final int index = overridden.indexOf(overriddenMethod);
+    if(index < 0) {
+      throw new IllegalArgumentException(overriddenMethod + " is not linked");
+    }
+    final MutableCallSite site = sites.get(index);
+    site.setTarget(target.asType(site.type()));
+    MutableCallSite.syncAll(new MutableCallSite[]{site});
+  }
+  /**
+   * Re-resolve the targets of all call sites,
+   * for example after the target classes are redefined.
+   */
+  void relink() {
+    final MutableCallSite[] all = sites.toArray(new MutableCallSite[sites.size()]);
+    for(int i=0; i<all.length; i++) {
+      all[i].setTarget(getTarget(targets.get(i), all[i].type()));
+    }
+    MutableCallSite.syncAll(all);
+  }
+  private static MethodHandle getTarget(Method targetMethod, MethodType siteType) {
+    try {
+      return MethodInvokers.unreflect(targetMethod).asType(siteType);
+    }
+    catch(IllegalAccessException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+  /**
+   * Make the call sites available to the static initializer of the generated class.
+   */
+  void register() {
+    pending.put(key, this);
+  }
+  /**
+   * Called once the generated class is defined and initialized, or failed to.
+   */
+  void unregister() {
+    pending.remove(key);
+  }
+  /**
+   * Associate with the generated class once it is defined.
+   */
+  void bind(Class<?> generatedClass) {
+    if(linkages.get(generatedClass) != this) {
+      throw new IllegalStateException(generatedClass + " is not generated for " + key);
+    }
+  }
+  static MethodHandle[] link(String key) {
+    final IndyLinkage linkage = pending.get(key);
+    if(linkage == null) {
+      throw new IllegalStateException("no call site registered for " + key);
+    }
+    final MethodHandle[] invokers = new MethodHandle[linkage.sites.size()];
+    for(int i=0; i<invokers.length; i++) {
+      invokers[i] = linkage.sites.get(i).dynamicInvoker();
+    }
+    return invokers;
+  }
+  /**
+   * Get the call sites of a class generated in "indy" mode.
+   * @return the IndyLinkage object, or null if the class was not generated in "indy" mode.
+   */
+  static IndyLinkage getLinkage(Class<?> generatedClass) {
+    return linkages.get(generatedClass);
+  }
+}
@@ -32,4 +32,22 @@ public interface Interceptor<T, Impl> {
    * @return the new instance.
    */
   T intercept(T intercepted, Impl overrider);
+  /**
+   * To create a {@link ReusableInterceptor} that can be rebound
+   * to different intercepted instances without allocation.
+   * @return the new ReusableInterceptor object.
+   */
+  ReusableInterceptor<T, Impl> newReusable();
+  /**
+   * To create an instance of {@code T} like {@link #intercept(Object, Object)},
+   * whose class is generated for and bound to {@code intercepted} and {@code overrider}.
+   * <br>
+   * The JIT can treat both objects as constants and inline calls through them.
+   * A class is generated for every call, even when the interceptor is precompiled,
+   * so it is meant for instances that live for a long time.
+   * @param intercepted the intercepted instance.
+   * @param overrider the instance used to intercept.
+   * @return the new instance.
+   */
+  T specialize(T intercepted, Impl overrider);
 }
@@ -0,0 +1,144 @@
+package org.codehaus.dimple;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches generated interceptors by intercepted type and impl class.
+ * <p>
+ * The interceptors of a pair are attached to the pair's host class 
+ * (see {@link #getHostClass(Class, Class)}), which is also where the interceptor
+ * class is defined. An entry lives as long as the classes of the pair,
+ * and is released together with the class loader of the host class.
+ * When the host class is a java.* class, the entry is kept by this class instead,
+ * and is released together with the class loader of dimple.
+ * <p>
+ * Lookups of generated interceptors never lock.
+ * Generation of one pair happens at most once at a time: 
+ * concurrent callers asking for the same pair wait for the same in-flight
+ * generation, while distinct pairs are generated in parallel.
+ * @author benyu
+ */
+final class InterceptorCache {
+  private InterceptorCache() {}
+  private static final ClassValue<ConcurrentMap<Pair<Class, Class>, Future<Interceptor>>> interceptors = 
+    new ClassValue<ConcurrentMap<Pair<Class, Class>, Future<Interceptor>>>() {
+      protected ConcurrentMap<Pair<Class, Class>, Future<Interceptor>> computeValue(Class<?> host) {
+        return new ConcurrentHashMap<Pair<Class, Class>, Future<Interceptor>>();
+      }
+    };
+  /* entries must not be attached to the system classes, or we are never unloaded. */
+  private static final ConcurrentMap<Pair<Class, Class>, Future<Interceptor>> systemInterceptors = 
+    new ConcurrentHashMap<Pair<Class, Class>, Future<Interceptor>>();
+  /**
+   * Get the class of the pair whose class loader can see the other class.
+   * <p>
+   * The interceptor class refers to both classes, so it is defined in the class loader 
+   * of the host class. The cache entry refers to both classes too, so it is attached 
+   * to the host class. Referring to the other class from there does not keep 
+   * any class loader alive longer than it already is.
+   * @param interceptedType the intercepted type.
+   * @param implClass the impl class.
+   * @return the host class.
+   */
+  static Class<?> getHostClass(Class<?> interceptedType, Class<?> implClass) {
+    final ClassLoader implLoader = implClass.getClassLoader();
+    final ClassLoader interceptedLoader = interceptedType.getClassLoader();
+    if(isAncestor(interceptedLoader, implLoader)) return implClass;
+    if(isAncestor(implLoader, interceptedLoader)) return interceptedType;
+    return implClass;
+  }
+  private static boolean isAncestor(ClassLoader ancestor, ClassLoader loader) {
+    if(ancestor == null) return true;
+    for(; loader != null; loader = loader.getParent()) {
+      if(loader == ancestor) return true;
+    }
+    return false;
+  }
+  /**
+   * Get the interceptor of a pair, generating it if not already cached.
+   * @param interceptedType the intercepted type.
+   * @param implClass the impl class.
+   * @param generator to generate the interceptor if not cached.
+   * @return the interceptor.
+   */
+  static Interceptor getInterceptor(Class interceptedType, Class implClass, 
+      Callable<Interceptor> generator) {
+    return get(getCache(interceptors, systemInterceptors, getHostClass(interceptedType, implClass)), 
+        interceptedType, implClass, generator);
+  }
+  /*
+   * the prototypes of the classes generated for override are cached apart from
+   * the interceptors, because both are keyed by the overridden class and the impl class.
+   */
+  private static final ClassValue<ConcurrentMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>>> overriders = 
+    new ClassValue<ConcurrentMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>>>() {
+      protected ConcurrentMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>> computeValue(Class<?> host) {
+        return new ConcurrentHashMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>>();
+      }
+    };
+  private static final ConcurrentMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>> systemOverriders = 
+    new ConcurrentHashMap<Pair<Class, Class>, Future<InternalDimpleInterceptor>>();
+  /**
+   * Get the prototype of the class generated to override instances of a class,
+   * generating it if not already cached.
+   * @param overriddenClass the class of the overridden objects.
+   * @param implClass the impl class.
+   * @param generator to generate the prototype if not cached.
+   * It may return null if no class can be generated, which is cached too.
+   * @return the prototype, or null.
+   */
+  static InternalDimpleInterceptor getOverrider(Class overriddenClass, Class implClass, 
+      Callable<InternalDimpleInterceptor> generator) {
+    return get(getCache(overriders, systemOverriders, getHostClass(overriddenClass, implClass)), 
+        overriddenClass, implClass, generator);
+  }
+  private static <V> ConcurrentMap<Pair<Class, Class>, Future<V>> getCache(
+      ClassValue<ConcurrentMap<Pair<Class, Class>, Future<V>>> cache, 
+      ConcurrentMap<Pair<Class, Class>, Future<V>> systemCache, Class<?> host) {
+    return TypingUtils.isSystemClass(host)?systemCache:cache.get(host);
+  }
+  private static <V> V get(ConcurrentMap<Pair<Class, Class>, Future<V>> cache, 
+      Class interceptedType, Class implClass, Callable<V> generator) {
+    final Pair<Class, Class> key = new Pair<Class, Class>(interceptedType, implClass);
+    Future<V> future = cache.get(key);
+    if(future == null) {
+      final FutureTask<V> task = new FutureTask<V>(generator);
+      future = cache.putIfAbsent(key, task);
+      if(future == null) {
+        future = task;
+        task.run();
+      }
+    }
+    try {
+      return getUninterruptibly(future);
+    }
+    catch(ExecutionException e) {
+      //let the next caller try again.
+      cache.remove(key, future);
+      throw Throwables.unchecked(e.getCause());
+    }
+  }
+  private static <V> V getUninterruptibly(Future<V> future) throws ExecutionException {
+    boolean interrupted = false;
+    try {
+      for(;;) {
+        try {
+          return future.get();
+        }
+        catch(InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    finally {
+      if(interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -1,116 +1,618 @@
 package org.codehaus.dimple;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import net.sf.cglib.core.ReflectUtils;
-
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Label;
-import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
 
 /*
  * This class is used to generate interceptor byte code.
  */
 class InterceptorGenerator {
-  private static int seed = 0;
-  private static synchronized int nextSeed() {
-    return ++seed;
+  private static final String INTERCEPTEE = "interceptee";
+  private static final String OVERRIDER = "overrider";
+  private static final AtomicInteger seed = new AtomicInteger();
+  static int nextSeed() {
+    return seed.incrementAndGet();
   }
   interface MethodMapping {
     Method getOverrrider(Method method);
   }
+  private static final MethodMapping NO_OVERRIDING = new MethodMapping() {
+    public Method getOverrrider(Method method) {
+      return null;
+    }
+  };
+  /*
+   * When delegating is false, only the overridden methods are generated.
+   * The delegating ones are inherited from a shared delegator class.
+   * When constant is true, the interceptee and the overrider are static fields.
+   * Default methods called by stubs are added to <i>defaults</i>.
+   */
   static void generateMethods(String className, Class<?> type, 
-      ClassVisitor classVisitor, MethodMapping overriding) {
+      Class<?> overriderFieldType, ClassEmitter classVisitor, MethodMapping overriding,
+      boolean delegating, boolean constant, List<Method> defaults, IndyLinkage linkage) {
     for(Method mtd: type.getMethods()) {
+      if(!isOverridable(mtd)) continue;
       Method overrider = overriding.getOverrrider(mtd);
+      if(overrider!=null && !type.isInterface() 
+          && Object.class.equals(overrider.getDeclaringClass())) {
+        //the class already has its own version of the Object method.
+        overrider = null;
+      }
       if(overrider==null) {
+        if(!delegating) {
+          //inherited from the delegator.
+          continue;
+        }
+        if(Object.class.equals(mtd.getDeclaringClass())) {
+          //keep the identity semantics of Object, same as interfaces.
+          continue;
+        }
         //no overriding, just delegate.
-        generateMethod(className, classVisitor, mtd, "interceptee", mtd);
+        generateMethod(className, classVisitor, mtd, INTERCEPTEE, type, type, mtd, 
+            constant, defaults, linkage);
       }
       else {
-        generateMethod(className, classVisitor, mtd, "overrider", overrider);
+        generateMethod(className, classVisitor, mtd, OVERRIDER, overriderFieldType,
+            overrider.getDeclaringClass(), overrider, constant, defaults, linkage);
       }
     }
   }
-  static <T, Impl> Interceptor<T, Impl> generateInterceptor(Class<T> type, 
-      Class<Impl> overriderType, MethodMapping overriding) {
-    String className = determinePackageName(overriderType)+"."
-      + type.getName().replace('.', '_')+"$$"
-      + overriderType.getName().replace('.', '_')
-      +"$$GeneratedInterceptor"+nextSeed();
-    ClassLoader loader = type.getClassLoader();
-    ClassWriter classWriter = beginInterceptorClass(type, className);
-    //need to define all methods of the target interface.
-    generateMethods(className, type, classWriter, overriding);
-    classWriter.visitEnd();
-    return generateInterceptor(
-            classWriter, className, type, overriderType, loader);
-  }
-  static String determinePackageName(Class<?> implType) {
-    String implPackage = implType.getPackage().getName();
-    if(implPackage.startsWith("java.") || implPackage.startsWith("javax.")) {
-      return Interceptor.class.getPackage().getName();
-    }
-    return implPackage;
-  }
-  static <T> ClassWriter beginInterceptorClass(Class<T> type, String className) {
-    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC, 
-        toTypeInternalName(className), null, 
-        Type.getInternalName(InternalDimpleInterceptorBase.class), 
-        new String[]{Type.getInternalName(type)});
-    classWriter.visitSource(className+".class", "generated");
-    generateDefaultConstructor(toTypeDescriptor(className), classWriter);
-    return classWriter;
+  private static boolean isOverridable(Method mtd) {
+    int modifiers = mtd.getModifiers();
+    return !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers);
   }
-  static <T,Impl> Interceptor<T,Impl> generateInterceptor(
-      ClassWriter classWriter, String className, final Class<T> interceptedType, 
-      Class<Impl> overriderType, ClassLoader loader) {
-    final Class generatedClass = defineClass(className, classWriter, loader);
+  static <T, Impl> Interceptor<T, Impl> generateInterceptor(final Class<T> type, 
+      final Class<Impl> overriderType, final MethodMapping overriding) {
+    if(Modifier.isFinal(type.getModifiers())) {
+      throw new IllegalArgumentException("cannot intercept final class " + type.getName());
+    }
+    if(!type.isInterface()) {
+      checkAbstractMethods(type);
+    }
+    final Class<?> precompiled = PrecompiledInterceptors.find(type, overriderType, false);
+    final InternalDimpleInterceptor prototype = newPrototype(type, precompiled!=null?precompiled
+        :generateInterceptorClass(type, overriderType, overriding, false));
     return new Interceptor<T,Impl>() {
+      /*
+       * the mutable variant is only generated when asked for.
+       * Racing threads may generate it twice, which is harmless.
+       */
+      private volatile InternalDimpleInterceptor reusablePrototype;
       public T stub(Impl obj) {
-        return instantiate(NilInterface.as(interceptedType), obj);
+        //the generated class throws UnsupportedOperationException by itself.
+        return instantiate(null, obj);
       }
       public T intercept(T intercepted, Impl overrider) {
         return instantiate(intercepted, overrider);
       }
       @SuppressWarnings("unchecked")
+      public T specialize(T intercepted, Impl overrider) {
+        //precompiled interceptors cannot be bound to objects, so the class is generated anyway.
+        return (T)newSpecializedInterceptor(type, overriderType, overriding, 
+            intercepted, overrider);
+      }
+      public ReusableInterceptor<T, Impl> newReusable() {
+        InternalDimpleInterceptor reusable = reusablePrototype;
+        if(reusable == null) {
+          Class<?> reusableClass = precompiled==null?null
+            :PrecompiledInterceptors.find(type, overriderType, true);
+          reusable = newPrototype(type, reusableClass!=null?reusableClass
+              :generateInterceptorClass(type, overriderType, overriding, true));
+          reusablePrototype = reusable;
+        }
+        final InternalDimpleReusableInterceptor instance = 
+          (InternalDimpleReusableInterceptor)reusable.newDimpleInterceptor(null, null);
+        return new ReusableInterceptor<T, Impl>() {
+          @SuppressWarnings("unchecked")
+          public T rebind(T intercepted, Impl overrider) {
+            instance.rebindDimpleInterceptor(intercepted, overrider);
+            return (T)instance;
+          }
+        };
+      }
+      @SuppressWarnings("unchecked")
       private  T instantiate(T intercepted, Impl overrider) {
-        return (T)instantiateInterceptor(generatedClass, intercepted, overrider);
+        return (T)prototype.newDimpleInterceptor(intercepted, overrider);
       }
     };
   }
-  private static Class defineClass(
-      String className, ClassWriter classWriter, ClassLoader loader) {
+  /*
+   * The generated class is final. 
+   * Its fields have the exact types of the interceptee and the overrider,
+   * and are final unless the class is reusable.
+   */
+  static Class<?> generateInterceptorClass(Class<?> type, 
+      Class<?> overriderType, MethodMapping overriding, boolean reusable) {
+    Class<?> neighbor = getNeighbor(InterceptorCache.getHostClass(type, overriderType));
+    boolean indy = isIndy();
+    //reusable and indy interceptors have their own interceptee field and call sites.
+    Class<?> delegator = (reusable || indy)?null:getDelegator(type, neighbor);
+    //indy interceptors link to call sites of this run, so they are never cached.
+    boolean cached = !indy && BytecodeCache.isEnabled();
+    String className = qualify(determinePackageName(neighbor),
+      type.getName().replace('.', '_')+"$$"
+      + overriderType.getName().replace('.', '_')
+      +"$$GeneratedInterceptor"
+      +(cached?BytecodeCache.hash(getInterceptorKind(delegator, reusable),
+          neighbor.getClassLoader(), type, overriderType)
+        :String.valueOf(nextSeed())));
+    if(cached) {
+      Class<?> found = BytecodeCache.getClass(neighbor, className, true);
+      if(found != null) return found;
+    }
+    Class<?> overriderFieldType = 
+      getFieldType(overriderType, className, neighbor.getClassLoader());
+    IndyLinkage linkage = indy?new IndyLinkage(className):null;
+    ClassEmitter classWriter = beginInterceptorClass(
+        type, delegator, overriderFieldType, className, reusable);
+    //need to define all methods of the target type, unless inherited from the delegator.
+    List<Method> defaults = new ArrayList<Method>();
+    generateMethods(className, type, overriderFieldType, classWriter, overriding, 
+        delegator == null, false, defaults, linkage);
+    if(linkage != null || !defaults.isEmpty()) {
+      MethodEmitter clinit = beginStaticInitializer(classWriter);
+      if(linkage != null) {
+        generateCallSiteInitializer(className, linkage, classWriter, clinit);
+      }
+      generateDefaultMethodInitializer(className, type, defaults, classWriter, clinit);
+      endStaticInitializer(clinit);
+    }
+    classWriter.visitEnd();
+    if(linkage == null) {
+      byte[] bytecode = classWriter.toByteArray();
+      if(!cached) {
+        return ClassDefiner.defineClass(neighbor, className, bytecode);
+      }
+      BytecodeCache.store(className, bytecode);
+      return BytecodeCache.define(neighbor, className, bytecode, true);
+    }
+    linkage.register();
     try {
-      return ReflectUtils.defineClass(
-          className, classWriter.toByteArray(), loader);
-    } catch(InvocationTargetException e) {
+      Class<?> generated = 
+        ClassDefiner.defineClass(neighbor, className, classWriter.toByteArray());
+      linkage.bind(generated);
+      return generated;
+    }
+    finally {
+      linkage.unregister();
+    }
+  }
+  /*
+   * public final class Overrider implements InternalDimpleInterceptor, I1, ..., In {
+   *   private final Object interceptee;
+   *   private final OverriderType overrider;
+   *   public R f(...) {
+   *     return ((I1)interceptee).f(...);
+   *   }
+   *   public R g(...) {
+   *     return overrider.g(...);
+   *   }
+   *   ...
+   * }
+   * One class implements all the interfaces of the overridden class.
+   * equals, hashCode and toString go to the overridden object unless overridden.
+   * The interceptee is never null, so there is no stub.
+   * Returns null if the class cannot be defined next to the neighbor,
+   * because some interface or overrider is not accessible from there.
+   */
+  static InternalDimpleInterceptor generateOverrider(Class<?> overridden, Class<?>[] interfaces,
+      Class<?> overriderType, MethodMapping overriding) {
+    Class<?> neighbor = getNeighbor(InterceptorCache.getHostClass(overridden, overriderType));
+    ClassLoader loader = neighbor.getClassLoader();
+    String className = qualify(determinePackageName(neighbor),
+        overridden.getName().replace('.', '_')+"$$"
+        + overriderType.getName().replace('.', '_')
+        +"$$GeneratedOverrider"+nextSeed());
+    String[] interfaceNames = new String[interfaces.length+1];
+    interfaceNames[0] = Descriptors.getInternalName(InternalDimpleInterceptor.class);
+    for(int i=0; i<interfaces.length; i++) {
+      if(!isAccessibleFrom(interfaces[i], className, loader)) return null;
+      interfaceNames[i+1] = Descriptors.getInternalName(interfaces[i]);
+    }
+    Collection<Method> methods = getOverriddenMethods(interfaces);
+    Method[] overriders = new Method[methods.size()];
+    int index = 0;
+    for(Method mtd : methods) {
+      Method overrider = overriding.getOverrrider(mtd);
+      if(overrider!=null && !Object.class.equals(overrider.getDeclaringClass())) {
+        if(!isAccessibleFrom(overrider.getDeclaringClass(), className, loader)) return null;
+        overriders[index] = overrider;
+      }
+      index++;
+    }
+    Class<?> overriderFieldType = getFieldType(overriderType, className, loader);
+    ClassEmitter classWriter = ClassEmitters.newClassEmitter();
+    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, 
+        toTypeInternalName(className), Descriptors.getInternalName(Object.class), 
+        interfaceNames);
+    classWriter.visitField(Opcodes.ACC_PRIVATE|Opcodes.ACC_FINAL, INTERCEPTEE, 
+        Descriptors.getDescriptor(Object.class));
+    classWriter.visitField(Opcodes.ACC_PRIVATE|Opcodes.ACC_FINAL, OVERRIDER, 
+        Descriptors.getDescriptor(overriderFieldType));
+    classWriter.visitSource(className+".class");
+    generateInterceptorConstructor(className, Object.class, null, overriderFieldType, classWriter);
+    generateFactoryMethod(className, classWriter);
+    index = 0;
+    for(Method mtd : methods) {
+      Method overrider = overriders[index++];
+      if(overrider == null) {
+        generateMethod(className, classWriter, mtd, INTERCEPTEE, Object.class, 
+            mtd.getDeclaringClass(), mtd, false, null, null);
+      }
+      else {
+        generateMethod(className, classWriter, mtd, OVERRIDER, overriderFieldType,
+            overrider.getDeclaringClass(), overrider, false, null, null);
+      }
+    }
+    classWriter.visitEnd();
+    return newPrototype(
+        ClassDefiner.defineClass(neighbor, className, classWriter.toByteArray()));
+  }
+  /*
+   * The methods of Object and of the interfaces, one per name and descriptor.
+   */
+  private static Collection<Method> getOverriddenMethods(Class<?>[] interfaces) {
+    Map<String, Method> methods = new LinkedHashMap<String, Method>();
+    for(Method mtd : TypingUtils.objectMethodsSignatures) {
+      try {
+        Method objectMethod = Object.class.getMethod(mtd.getName(), mtd.getParameterTypes());
+        methods.put(objectMethod.getName()+Descriptors.getMethodDescriptor(objectMethod), 
+            objectMethod);
+      }
+      catch(NoSuchMethodException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+    for(Class<?> itf : interfaces) {
+      for(Method mtd : itf.getMethods()) {
+        if(Modifier.isStatic(mtd.getModifiers())) continue;
+        String key = mtd.getName()+Descriptors.getMethodDescriptor(mtd);
+        if(!methods.containsKey(key)) {
+          methods.put(key, mtd);
+        }
+      }
+    }
+    return methods.values();
+  }
+  /*
+   * Whether the generated class can refer to a type by name.
+   */
+  private static boolean isAccessibleFrom(Class<?> type, String className, ClassLoader loader) {
+    if(!Modifier.isPublic(type.getModifiers())
+        || !type.getModule().isExported(TypingUtils.getPackageName(type))) {
+      if(type.getClassLoader()!=loader 
+          || !TypingUtils.getPackageName(type).equals(getPackageName(className))) {
+        return false;
+      }
+    }
+    try {
+      return Class.forName(type.getName(), false, loader)==type;
+    }
+    catch(ClassNotFoundException e) {
+      return false;
+    }
+  }
+  /*
+   * The cached byte code also depends on the delegator the interceptor extends.
+   */
+  private static String getInterceptorKind(Class<?> delegator, boolean reusable) {
+    if(reusable) return "reusable";
+    return delegator==null?"interceptor":"interceptor:"+delegator.getName();
+  }
+  /*
+   * Delegators are defined once per interface, next to the interface.
+   * Racing threads may generate it twice, which is harmless.
+   * java.* interfaces have no delegator: it would be defined in our class loader,
+   * and attaching it to the system class would keep that loader forever.
+   */
+  private static final ClassValue<Class<?>> delegators = new ClassValue<Class<?>>() {
+    protected Class<?> computeValue(Class<?> type) {
+      return generateDelegatorClass(type);
+    }
+  };
+  /*
+   * Get the delegator of an interface, 
+   * or null if the interceptor defined next to the neighbor cannot extend it.
+   */
+  static Class<?> getDelegator(Class<?> type, Class<?> neighbor) {
+    if(!type.isInterface() || !Modifier.isPublic(type.getModifiers())
+        || !type.getModule().isExported(TypingUtils.getPackageName(type))
+        || TypingUtils.isSystemClass(type)) {
+      return null;
+    }
+    Class<?> delegator = delegators.get(type);
+    try {
+      //the hidden interceptor class resolves its super class by name.
+      return Class.forName(delegator.getName(), false, neighbor.getClassLoader())==delegator
+        ?delegator:null;
+    }
+    catch(ClassNotFoundException e) {
+      return null;
+    }
+  }
+  /*
+   * public abstract class Delegator implements Type {
+   *   protected final Type interceptee;
+   *   protected Delegator(Object interceptee) {...}
+   *   public R f(...) {
+   *     return interceptee.f(...);
+   *   }
+   *   ...
+   * }
+   */
+  private static Class<?> generateDelegatorClass(Class<?> type) {
+    Class<?> neighbor = getNeighbor(type);
+    boolean cached = BytecodeCache.isEnabled();
+    String className = qualify(determinePackageName(neighbor),
+        type.getName().replace('.', '_')+"$$DimpleDelegator"
+        +(cached?BytecodeCache.hash("delegator", neighbor.getClassLoader(), type)
+          :String.valueOf(nextSeed())));
+    if(cached) {
+      Class<?> found = BytecodeCache.getClass(neighbor, className, false);
+      if(found != null) return found;
+    }
+    String internalName = toTypeInternalName(className);
+    ClassEmitter classWriter = ClassEmitters.newClassEmitter();
+    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, 
+        internalName, getSuperclassName(type), 
+        new String[]{Descriptors.getInternalName(type)});
+    classWriter.visitField(Opcodes.ACC_PROTECTED|Opcodes.ACC_FINAL, INTERCEPTEE, 
+        Descriptors.getDescriptor(type));
+    classWriter.visitSource(className+".class");
+    MethodEmitter ctor = classWriter.visitMethod(Opcodes.ACC_PROTECTED, "<init>", 
+        DELEGATOR_CONSTRUCTOR_DESCRIPTOR, null);
+    ctor.visitCode();
+    ctor.visitVarInsn(Opcodes.ALOAD, 0);
+    ctor.visitMethodInsn(Opcodes.INVOKESPECIAL, 
+        Descriptors.getInternalName(Object.class), "<init>", "()V");
+    generateFieldAssignment(internalName, INTERCEPTEE, type, 1, ctor);
+    ctor.visitInsn(Opcodes.RETURN);
+    ctor.visitEnd();
+    List<Method> defaults = new ArrayList<Method>();
+    generateMethods(className, type, Object.class, classWriter, NO_OVERRIDING, 
+        true, false, defaults, null);
+    if(!defaults.isEmpty()) {
+      MethodEmitter clinit = beginStaticInitializer(classWriter);
+      generateDefaultMethodInitializer(className, type, defaults, classWriter, clinit);
+      endStaticInitializer(clinit);
+    }
+    classWriter.visitEnd();
+    byte[] bytecode = classWriter.toByteArray();
+    if(!cached) {
+      return ClassDefiner.defineNamedClass(neighbor, className, bytecode);
+    }
+    BytecodeCache.store(className, bytecode);
+    return BytecodeCache.define(neighbor, className, bytecode, false);
+  }
+  /*
+   * final class Specialized extends Type {
+   *   private static final Type interceptee;
+   *   private static final OverriderType overrider;
+   *   ...
+   * }
+   * One class is generated for one pair of instances.
+   * The JIT treats static final fields as constants, 
+   * so calls can be inlined through both the interceptor and the target.
+   */
+  static Object newSpecializedInterceptor(Class<?> type, Class<?> overriderType, 
+      MethodMapping overriding, Object interceptee, Object overrider) {
+    Class<?> neighbor = getNeighbor(InterceptorCache.getHostClass(type, overriderType));
+    String className = qualify(determinePackageName(neighbor),
+      type.getName().replace('.', '_')+"$$"
+      + overriderType.getName().replace('.', '_')
+      +"$$SpecializedInterceptor"+nextSeed());
+    String internalName = toTypeInternalName(className);
+    Class<?> overriderFieldType = 
+      getFieldType(overriderType, className, neighbor.getClassLoader());
+    ClassEmitter classWriter = ClassEmitters.newClassEmitter();
+    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, 
+        internalName, getSuperclassName(type), 
+        type.isInterface()?new String[]{Descriptors.getInternalName(type)}:null);
+    int fieldAccess = Opcodes.ACC_PRIVATE|Opcodes.ACC_STATIC|Opcodes.ACC_FINAL;
+    classWriter.visitField(fieldAccess, INTERCEPTEE, Descriptors.getDescriptor(type));
+    classWriter.visitField(fieldAccess, OVERRIDER, 
+        Descriptors.getDescriptor(overriderFieldType));
+    classWriter.visitSource(className+".class");
+    MethodEmitter ctor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null);
+    ctor.visitCode();
+    ctor.visitVarInsn(Opcodes.ALOAD, 0);
+    generateSuperConstructorCall(className, type, ctor);
+    ctor.visitInsn(Opcodes.RETURN);
+    ctor.visitEnd();
+    List<Method> defaults = new ArrayList<Method>();
+    generateMethods(className, type, overriderFieldType, classWriter, overriding, 
+        true, true, defaults, null);
+    MethodEmitter clinit = beginStaticInitializer(classWriter);
+    generateConstantInitializer(className, type, overriderFieldType, clinit);
+    generateDefaultMethodInitializer(className, type, defaults, classWriter, clinit);
+    endStaticInitializer(clinit);
+    classWriter.visitEnd();
+    ClassConstants.register(className, new Object[]{interceptee, overrider});
+    try {
+      return ClassDefiner.defineClass(neighbor, className, classWriter.toByteArray())
+        .getConstructor().newInstance();
+    }
+    catch(InvocationTargetException e) {
       throw Throwables.unchecked(e.getTargetException());
     }
-    catch (Exception e) {
+    catch(Exception e) {
       throw Throwables.unchecked(e);
     }
+    finally {
+      ClassConstants.unregister(className);
+    }
+  }
+  /*
+   * A class has one static initializer, shared by constants, call sites and default methods.
+   */
+  private static MethodEmitter beginStaticInitializer(ClassEmitter visitor) {
+    MethodEmitter code = visitor.visitMethod(
+        Opcodes.ACC_STATIC, "<clinit>", "()V", null);
+    code.visitCode();
+    return code;
+  }
+  private static void endStaticInitializer(MethodEmitter code) {
+    code.visitInsn(Opcodes.RETURN);
+    code.visitEnd();
+  }
+  /*
+   * Object[] constants = InternalDimpleBootstrap.constants(key);
+   * interceptee = (Type)constants[0];
+   * overrider = (OverriderType)constants[1];
+   */
+  private static void generateConstantInitializer(String className, 
+      Class<?> type, Class<?> overriderFieldType, MethodEmitter code) {
+    code.visitLdcInsn(className);
+    code.visitMethodInsn(Opcodes.INVOKESTATIC, 
+        Descriptors.getInternalName(InternalDimpleBootstrap.class), "constants", 
+        "(Ljava/lang/String;)[Ljava/lang/Object;");
+    code.visitInsn(Opcodes.DUP);
+    code.visitInsn(Opcodes.ICONST_0);
+    code.visitInsn(Opcodes.AALOAD);
+    generateConstantAssignment(className, INTERCEPTEE, type, code);
+    code.visitInsn(Opcodes.ICONST_1);
+    code.visitInsn(Opcodes.AALOAD);
+    generateConstantAssignment(className, OVERRIDER, overriderFieldType, code);
+  }
+  private static void generateConstantAssignment(String className, 
+      String fieldName, Class<?> fieldType, MethodEmitter code) {
+    if(!Object.class.equals(fieldType)) {
+      code.visitTypeInsn(Opcodes.CHECKCAST, Descriptors.getInternalName(fieldType));
+    }
+    code.visitFieldInsn(Opcodes.PUTSTATIC, toTypeInternalName(className), 
+        fieldName, Descriptors.getDescriptor(fieldType));
+  }
+  /*
+   * -Ddimple.codegen=indy calls the targets through MutableCallSite.
+   */
+  static boolean isIndy() {
+    return "indy".equals(System.getProperty("dimple.codegen"));
+  }
+  /*
+   * The generated class is defined in the package of this class.
+   * We cannot define classes in java.* packages. Use our own package instead.
+   */
+  static Class<?> getNeighbor(Class<?> host) {
+    return TypingUtils.isSystemClass(host)?InterceptorGenerator.class:host;
+  }
+  /*
+   * A type the generated class cannot refer to is kept as Object.
+   */
+  private static Class<?> getFieldType(Class<?> type, String className, ClassLoader loader) {
+    if(Modifier.isPublic(type.getModifiers())
+        && type.getModule().isExported(TypingUtils.getPackageName(type))) {
+      return type;
+    }
+    if(type.getClassLoader()==loader && !TypingUtils.isSystemClass(type)
+        && TypingUtils.getPackageName(type).equals(getPackageName(className))) {
+      return type;
+    }
+    return Object.class;
+  }
+  static String determinePackageName(Class<?> implType) {
+    return TypingUtils.getPackageName(getNeighbor(implType));
+  }
+  private static String getPackageName(String className) {
+    return className.substring(0, Math.max(0, className.lastIndexOf('.')));
+  }
+  static String qualify(String packageName, String simpleName) {
+    return packageName.length()==0?simpleName:packageName+"."+simpleName;
+  }
+  /*
+   * Interfaces are implemented by a subclass of the delegator if any, or of Object.
+   * Classes are extended directly.
+   */
+  static ClassEmitter beginInterceptorClass(Class<?> type, Class<?> delegator,
+      Class<?> overriderFieldType, String className, boolean reusable) {
+    ClassEmitter classWriter = ClassEmitters.newClassEmitter();
+    String[] interfaces = reusable?
+      new String[]{Descriptors.getInternalName(InternalDimpleReusableInterceptor.class)}
+      :new String[]{Descriptors.getInternalName(InternalDimpleInterceptor.class)};
+    if(type.isInterface()) {
+      interfaces = new String[]{interfaces[0], Descriptors.getInternalName(type)};
+    }
+    String superclassName = delegator==null?getSuperclassName(type)
+        :Descriptors.getInternalName(delegator);
+    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, 
+        toTypeInternalName(className), superclassName, interfaces);
+    int fieldAccess = reusable?Opcodes.ACC_PRIVATE:Opcodes.ACC_PRIVATE|Opcodes.ACC_FINAL;
+    if(delegator == null) {
+      classWriter.visitField(fieldAccess, INTERCEPTEE, 
+          Descriptors.getDescriptor(type));
+    }
+    classWriter.visitField(fieldAccess, OVERRIDER, 
+        Descriptors.getDescriptor(overriderFieldType));
+    classWriter.visitSource(className+".class");
+    generateInterceptorConstructor(className, type, delegator, overriderFieldType, classWriter);
+    generateFactoryMethod(className, classWriter);
+    if(reusable) {
+      generateRebindMethod(className, type, overriderFieldType, classWriter);
+    }
+    return classWriter;
+  }
+  /*
+   * Only public methods are overridden.
+   * An abstract method that is not public would fail when called on the interceptor.
+   */
+  private static void checkAbstractMethods(Class<?> type) {
+    Set<String> implemented = new HashSet<String>();
+    for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+      for(Method mtd : c.getDeclaredMethods()) {
+        String signature = mtd.getName() + Arrays.asList(mtd.getParameterTypes());
+        if(!Modifier.isAbstract(mtd.getModifiers())) {
+          implemented.add(signature);
+        }
+        else if(!Modifier.isPublic(mtd.getModifiers()) && !implemented.contains(signature)) {
+          throw new IllegalArgumentException("cannot intercept " + type.getName()
+              + ", abstract method is not public: " + mtd);
+        }
+      }
+    }
+  }
+  /*
+   * The super constructor of a class runs with null, zero or false,
+   * which a constructor checking its parameters rejects.
+   */
+  private static InternalDimpleInterceptor newPrototype(Class<?> type, Class<?> generatedClass) {
+    try {
+      return newPrototype(generatedClass);
+    }
+    catch(RuntimeException e) {
+      if(type.isInterface()) throw e;
+      throw new IllegalArgumentException("cannot intercept " + type.getName()
+          + ", its constructor rejects null, zero or false: " + e, e);
+    }
   }
-  static Object instantiateInterceptor(
-      Class<? extends InternalDimpleInterceptorBase> generatedClass,
-      Object intercepted, Object overrider) {
+  /*
+   * The only reflective instantiation. Other instances are created 
+   * by calling the generated factory method on this instance.
+   */
+  static InternalDimpleInterceptor newPrototype(Class<?> generatedClass) {
     try {
-      InternalDimpleInterceptorBase instance = (InternalDimpleInterceptorBase)generatedClass.newInstance();
-      instance.interceptee = intercepted;
-      instance.overrider = overrider;
-      return instance;
+      return (InternalDimpleInterceptor)generatedClass
+        .getConstructor(Object.class, Object.class).newInstance(null, null);
+    } catch(InvocationTargetException e) {
+      throw Throwables.unchecked(e.getTargetException());
     } catch (Exception e) {
       throw Throwables.unchecked(e);
     }
   }
-  static int getInvokeOp(Method targetMethod) {
-    if(targetMethod.getDeclaringClass().isInterface()) {
+  static int getInvokeOp(Class<?> targetType, Method targetMethod) {
+    if(targetType.isInterface()) {
       return Opcodes.INVOKEINTERFACE;
     }
     else if(Modifier.isStatic(targetMethod.getModifiers())) {
@@ -121,58 +623,224 @@ class InterceptorGenerator {
     }
   }
   //TODO: how do we deal with signatures?
-  static void generateMethod(String className, ClassVisitor classVisitor, 
-      Method overriddenMethod, String targetName, Method targetMethod) {
-    Class targetType = targetMethod.getDeclaringClass();
-    int invokeOp = getInvokeOp(targetMethod);
-    MethodVisitor code = classVisitor.visitMethod(
+  static void generateMethod(String className, ClassEmitter classVisitor, 
+      Method overriddenMethod, String targetName, Class<?> fieldType, 
+      Class<?> targetType, Method targetMethod, boolean constant, List<Method> defaults,
+      IndyLinkage linkage) {
+    int invokeOp = getInvokeOp(targetType, targetMethod);
+    MethodEmitter code = classVisitor.visitMethod(
         Opcodes.ACC_PUBLIC, overriddenMethod.getName(), 
-        Type.getMethodDescriptor(overriddenMethod), 
-        null, toInternalNames(overriddenMethod.getExceptionTypes()));
+        Descriptors.getMethodDescriptor(overriddenMethod), 
+        toInternalNames(overriddenMethod.getExceptionTypes()));
     code.visitCode();
-    Label begin = new Label();
+    CodeLabel begin = new CodeLabel();
     code.visitLabel(begin);
-    if(Opcodes.INVOKESTATIC != invokeOp) {
-      code.visitVarInsn(Opcodes.ALOAD, 0);
-      code.visitFieldInsn(Opcodes.GETFIELD, toTypeInternalName(className), 
-          targetName, "Ljava/lang/Object;");
-      code.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(targetType));
+    if(INTERCEPTEE.equals(targetName) && defaults != null) {
+      //a stub has no interceptee.
+      generateStubCheck(className, overriddenMethod, fieldType, constant, defaults, code);
     }
-    int stackIndex = 1;
-    for(Type argType: Type.getArgumentTypes(overriddenMethod)) {
-      code.visitVarInsn(argType.getOpcode(Opcodes.ILOAD), stackIndex);
-      stackIndex += argType.getSize();
+    if(linkage != null) {
+      generateCallSiteInvocation(className, overriddenMethod, targetName, 
+          Opcodes.INVOKESTATIC==invokeOp?null:fieldType, targetMethod, linkage, code);
+    }
+    else {
+      if(Opcodes.INVOKESTATIC != invokeOp) {
+        loadTarget(className, targetName, fieldType, constant, code);
+        if(!targetType.isAssignableFrom(fieldType)) {
+          code.visitTypeInsn(Opcodes.CHECKCAST, Descriptors.getInternalName(targetType));
+        }
+      }
+      loadParameters(overriddenMethod, code);
+      code.visitMethodInsn(invokeOp, Descriptors.getInternalName(targetType), 
+          targetMethod.getName(), Descriptors.getMethodDescriptor(targetMethod));
     }
-    code.visitMethodInsn(invokeOp, Type.getInternalName(targetType), 
-        targetMethod.getName(), Type.getMethodDescriptor(targetMethod));
     code.visitInsn(
-        Type.getReturnType(overriddenMethod).getOpcode(Opcodes.IRETURN));
-    Label end = new Label();
+        Descriptors.getReturnOpcode(overriddenMethod.getReturnType()));
+    CodeLabel end = new CodeLabel();
     code.visitLabel(end);
     declareParameters(className, overriddenMethod, code, begin, end);
     code.visitEnd();
   }
+  /*
+   * Push the interceptee or the overrider.
+   */
+  private static void loadTarget(String className, String targetName, 
+      Class<?> fieldType, boolean constant, MethodEmitter code) {
+    if(constant) {
+      code.visitFieldInsn(Opcodes.GETSTATIC, toTypeInternalName(className), 
+          targetName, Descriptors.getDescriptor(fieldType));
+    }
+    else {
+      code.visitVarInsn(Opcodes.ALOAD, 0);
+      code.visitFieldInsn(Opcodes.GETFIELD, toTypeInternalName(className), 
+          targetName, Descriptors.getDescriptor(fieldType));
+    }
+  }
+  private static final String METHOD_HANDLE_NAME = 
+    Descriptors.getInternalName(MethodHandle.class);
+  private static final String METHOD_HANDLE_DESCRIPTOR = 
+    Descriptors.getDescriptor(MethodHandle.class);
+  private static String getCallSiteFieldName(int index) {
+    return "callSite"+index;
+  }
+  /*
+   * callSiteN.invokeExact(receiver, args...)
+   */
+  private static void generateCallSiteInvocation(String className, 
+      Method overriddenMethod, String targetName, Class<?> receiverType, 
+      Method targetMethod, IndyLinkage linkage, MethodEmitter code) {
+    int index = linkage.addCallSite(overriddenMethod, receiverType, targetMethod);
+    code.visitFieldInsn(Opcodes.GETSTATIC, toTypeInternalName(className), 
+        getCallSiteFieldName(index), METHOD_HANDLE_DESCRIPTOR);
+    if(receiverType != null) {
+      code.visitVarInsn(Opcodes.ALOAD, 0);
+      code.visitFieldInsn(Opcodes.GETFIELD, toTypeInternalName(className), 
+          targetName, Descriptors.getDescriptor(receiverType));
+    }
+    loadParameters(overriddenMethod, code);
+    code.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE_NAME, "invokeExact", 
+        linkage.getType(index).toMethodDescriptorString());
+  }
+  /*
+   * MethodHandle[] invokers = InternalDimpleBootstrap.link(key);
+   * callSite0 = invokers[0];
+   * ...
+   */
+  private static void generateCallSiteInitializer(String className, 
+      IndyLinkage linkage, ClassEmitter visitor, MethodEmitter code) {
+    String internalName = toTypeInternalName(className);
+    for(int i=0; i<linkage.size(); i++) {
+      visitor.visitField(Opcodes.ACC_PRIVATE|Opcodes.ACC_STATIC|Opcodes.ACC_FINAL, 
+          getCallSiteFieldName(i), METHOD_HANDLE_DESCRIPTOR);
+    }
+    code.visitLdcInsn(linkage.getKey());
+    code.visitMethodInsn(Opcodes.INVOKESTATIC, 
+        Descriptors.getInternalName(InternalDimpleBootstrap.class), "link", 
+        "(Ljava/lang/String;)[" + METHOD_HANDLE_DESCRIPTOR);
+    for(int i=0; i<linkage.size(); i++) {
+      code.visitInsn(Opcodes.DUP);
+      InvokerGenerator.pushInt(code, i);
+      code.visitInsn(Opcodes.AALOAD);
+      code.visitFieldInsn(Opcodes.PUTSTATIC, internalName, 
+          getCallSiteFieldName(i), METHOD_HANDLE_DESCRIPTOR);
+    }
+    code.visitInsn(Opcodes.POP);
+  }
+  private static String getDefaultMethodFieldName(int index) {
+    return "defaultMethod"+index;
+  }
+  /*
+   * The handle of a default method takes the intercepted type as receiver,
+   * because a hidden class cannot be named in a method descriptor.
+   */
+  private static String getDefaultMethodDescriptor(Class<?> type, Method mtd) {
+    String descriptor = Descriptors.getMethodDescriptor(mtd);
+    return "(" + Descriptors.getDescriptor(type) + descriptor.substring(1);
+  }
+  /*
+   * defaultMethodN = InternalDimpleBootstrap.findDefault(
+   *     MethodHandles.lookup(), "Type", "name", "descriptor");
+   * ...
+   */
+  private static void generateDefaultMethodInitializer(String className, Class<?> type,
+      List<Method> defaults, ClassEmitter visitor, MethodEmitter code) {
+    for(int i=0; i<defaults.size(); i++) {
+      Method mtd = defaults.get(i);
+      visitor.visitField(Opcodes.ACC_PRIVATE|Opcodes.ACC_STATIC|Opcodes.ACC_FINAL, 
+          getDefaultMethodFieldName(i), METHOD_HANDLE_DESCRIPTOR);
+      code.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodHandles", 
+          "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+      code.visitLdcInsn(type.getName());
+      code.visitLdcInsn(mtd.getName());
+      code.visitLdcInsn(Descriptors.getMethodDescriptor(mtd));
+      code.visitMethodInsn(Opcodes.INVOKESTATIC, 
+          Descriptors.getInternalName(InternalDimpleBootstrap.class), "findDefault", 
+          "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/String;"
+          + "Ljava/lang/String;)" + METHOD_HANDLE_DESCRIPTOR);
+      code.visitFieldInsn(Opcodes.PUTSTATIC, toTypeInternalName(className), 
+          getDefaultMethodFieldName(i), METHOD_HANDLE_DESCRIPTOR);
+    }
+  }
+  private static String getSuperclassName(Class<?> type) {
+    return Descriptors.getInternalName(
+        type.isInterface()?Object.class:type);
+  }
+  /*
+   * When the interceptee is null, methods of Object are called on the super class,
+   * default methods run their default body,
+   * other methods throw UnsupportedOperationException.
+   */
+  private static void generateStubCheck(String className, Method overriddenMethod, 
+      Class<?> type, boolean constant, List<Method> defaults, MethodEmitter code) {
+    CodeLabel intercepted = new CodeLabel();
+    loadTarget(className, INTERCEPTEE, type, constant, code);
+    code.visitJumpInsn(Opcodes.IFNONNULL, intercepted);
+    if(isObjectMethod(overriddenMethod)) {
+      code.visitVarInsn(Opcodes.ALOAD, 0);
+      loadParameters(overriddenMethod, code);
+      code.visitMethodInsn(Opcodes.INVOKESPECIAL, getSuperclassName(type), 
+          overriddenMethod.getName(), Descriptors.getMethodDescriptor(overriddenMethod));
+      code.visitInsn(
+          Descriptors.getReturnOpcode(overriddenMethod.getReturnType()));
+    }
+    else if(overriddenMethod.isDefault()) {
+      String fieldName = getDefaultMethodFieldName(defaults.size());
+      defaults.add(overriddenMethod);
+      code.visitFieldInsn(Opcodes.GETSTATIC, toTypeInternalName(className), 
+          fieldName, METHOD_HANDLE_DESCRIPTOR);
+      code.visitVarInsn(Opcodes.ALOAD, 0);
+      loadParameters(overriddenMethod, code);
+      code.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE_NAME, "invokeExact", 
+          getDefaultMethodDescriptor(type, overriddenMethod));
+      code.visitInsn(
+          Descriptors.getReturnOpcode(overriddenMethod.getReturnType()));
+    }
+    else {
+      String exceptionName = Descriptors.getInternalName(UnsupportedOperationException.class);
+      code.visitTypeInsn(Opcodes.NEW, exceptionName);
+      code.visitInsn(Opcodes.DUP);
+      code.visitLdcInsn(overriddenMethod.toString());
+      code.visitMethodInsn(Opcodes.INVOKESPECIAL, exceptionName, 
+          "<init>", "(Ljava/lang/String;)V");
+      code.visitInsn(Opcodes.ATHROW);
+    }
+    code.visitLabel(intercepted);
+  }
+  private static boolean isObjectMethod(Method mtd) {
+    try {
+      Object.class.getMethod(mtd.getName(), mtd.getParameterTypes());
+      return true;
+    }
+    catch(NoSuchMethodException e) {
+      return false;
+    }
+  }
+  private static void loadParameters(Method mtd, MethodEmitter code) {
+    int stackIndex = 1;
+    for(Class<?> paramType: mtd.getParameterTypes()) {
+      code.visitVarInsn(Descriptors.getLoadOpcode(paramType), stackIndex);
+      stackIndex += Descriptors.getSize(paramType);
+    }
+  }
   private static String[] toInternalNames(Class<?>[] classes) {
     String[] exceptionNames = new String[classes.length];
     for(int i=0; i<classes.length; i++) {
-      exceptionNames[i] = Type.getInternalName(classes[i]);
+      exceptionNames[i] = Descriptors.getInternalName(classes[i]);
     }
     return exceptionNames;
   }
   static void declareParameters(String className, Method overriddenMethod, 
-      MethodVisitor code, Label begin, Label end) {
+      MethodEmitter code, CodeLabel begin, CodeLabel end) {
     //need to get signatures of parameters.
     code.visitLocalVariable(
-        "this", toTypeDescriptor(className), null, begin, end, 0);
+        "this", toTypeDescriptor(className), begin, end, 0);
     int stackSize = 1;
-    Type[] argTypes = Type.getArgumentTypes(overriddenMethod);
-    for(int i=0; i<argTypes.length; i++) {
-      Type argType = argTypes[i];
-      String descriptor = argType.getDescriptor();
-      code.visitLocalVariable("arg"+i, descriptor, null, begin, end, stackSize);
-      stackSize += argType.getSize();
+    Class<?>[] paramTypes = overriddenMethod.getParameterTypes();
+    for(int i=0; i<paramTypes.length; i++) {
+      code.visitLocalVariable("arg"+i, 
+          Descriptors.getDescriptor(paramTypes[i]), begin, end, stackSize);
+      stackSize += Descriptors.getSize(paramTypes[i]);
     }
-    code.visitMaxs(stackSize, argTypes.length+1);
   }
   static String toTypeDescriptor(String className) {
     return "L"+toTypeInternalName(className)+";";
@@ -180,26 +848,175 @@ class InterceptorGenerator {
   static String toTypeInternalName(String className) {
     return className.replace('.', '/');
   }
+  private static final String INTERCEPTOR_CONSTRUCTOR_DESCRIPTOR = 
+    "(Ljava/lang/Object;Ljava/lang/Object;)V";
+  private static final String DELEGATOR_CONSTRUCTOR_DESCRIPTOR = 
+    "(Ljava/lang/Object;)V";
+  /*
+   * public Generated(Object interceptee, Object overrider)
+   */
+  static void generateInterceptorConstructor(String className, Class<?> type, 
+      Class<?> delegator, Class<?> overriderFieldType, ClassEmitter visitor) {
+    String internalName = toTypeInternalName(className);
+    MethodEmitter ctor = visitor.visitMethod(Opcodes.ACC_PUBLIC, "<init>", 
+        INTERCEPTOR_CONSTRUCTOR_DESCRIPTOR, null);
+    ctor.visitCode();
+    CodeLabel begin = new CodeLabel();
+    ctor.visitLabel(begin);
+    ctor.visitVarInsn(Opcodes.ALOAD, 0);
+    if(delegator != null) {
+      ctor.visitVarInsn(Opcodes.ALOAD, 1);
+      ctor.visitMethodInsn(Opcodes.INVOKESPECIAL, 
+          Descriptors.getInternalName(delegator), "<init>", DELEGATOR_CONSTRUCTOR_DESCRIPTOR);
+    }
+    else {
+      generateSuperConstructorCall(className, type, ctor);
+    }
+    if(delegator == null) {
+      generateFieldAssignment(internalName, INTERCEPTEE, type, 1, ctor);
+    }
+    generateFieldAssignment(internalName, OVERRIDER, overriderFieldType, 2, ctor);
+    ctor.visitInsn(Opcodes.RETURN);
+    CodeLabel end = new CodeLabel();
+    ctor.visitLabel(end);
+    ctor.visitLocalVariable("this", toTypeDescriptor(className), begin, end, 0);
+    ctor.visitLocalVariable("interceptee", "Ljava/lang/Object;", begin, end, 1);
+    ctor.visitLocalVariable("overrider", "Ljava/lang/Object;", begin, end, 2);
+    ctor.visitEnd();
+  }
+  /*
+   * super(...), with "this" already on top of stack.
+   */
+  private static void generateSuperConstructorCall(String className, Class<?> type, 
+      MethodEmitter ctor) {
+    if(type.isInterface()) {
+      ctor.visitMethodInsn(Opcodes.INVOKESPECIAL, 
+          Descriptors.getInternalName(Object.class), "<init>", "()V");
+    }
+    else {
+      Constructor<?> superConstructor = selectSuperConstructor(type, className);
+      for(Class<?> paramType : superConstructor.getParameterTypes()) {
+        pushDefaultValue(ctor, paramType);
+      }
+      ctor.visitMethodInsn(Opcodes.INVOKESPECIAL, Descriptors.getInternalName(type), 
+          "<init>", Descriptors.getConstructorDescriptor(superConstructor));
+    }
+  }
+  /*
+   * The interceptor never uses the state of the super class.
+   * So the constructor with the fewest parameters is called,
+   * with null, 0 or false for each parameter.
+   */
+  static Constructor<?> selectSuperConstructor(Class<?> type, String className) {
+    Constructor<?> selected = null;
+    for(Constructor<?> ctor : type.getDeclaredConstructors()) {
+      if(!isAccessibleFrom(ctor, className)) continue;
+      if(selected==null 
+          || ctor.getParameterTypes().length < selected.getParameterTypes().length) {
+        selected = ctor;
+      }
+    }
+    if(selected == null) {
+      throw new IllegalArgumentException("no accessible constructor in " + type.getName());
+    }
+    return selected;
+  }
+  private static boolean isAccessibleFrom(Constructor<?> ctor, String className) {
+    int modifiers = ctor.getModifiers();
+    if(Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers)) {
+      return true;
+    }
+    //package private constructor of the same package.
+    return !Modifier.isPrivate(modifiers) && TypingUtils.getPackageName(
+        ctor.getDeclaringClass()).equals(getPackageName(className));
+  }
+  private static void pushDefaultValue(MethodEmitter code, Class<?> type) {
+    if(!type.isPrimitive()) {
+      code.visitInsn(Opcodes.ACONST_NULL);
+    }
+    else if(long.class.equals(type)) {
+      code.visitInsn(Opcodes.LCONST_0);
+    }
+    else if(float.class.equals(type)) {
+      code.visitInsn(Opcodes.FCONST_0);
+    }
+    else if(double.class.equals(type)) {
+      code.visitInsn(Opcodes.DCONST_0);
+    }
+    else {
+      code.visitInsn(Opcodes.ICONST_0);
+    }
+  }
+  /*
+   * this.field = (FieldType)parameter;
+   */
+  private static void generateFieldAssignment(String internalName, 
+      String fieldName, Class<?> fieldType, int parameterIndex, MethodEmitter code) {
+    code.visitVarInsn(Opcodes.ALOAD, 0);
+    code.visitVarInsn(Opcodes.ALOAD, parameterIndex);
+    if(!Object.class.equals(fieldType)) {
+      code.visitTypeInsn(Opcodes.CHECKCAST, Descriptors.getInternalName(fieldType));
+    }
+    code.visitFieldInsn(Opcodes.PUTFIELD, internalName, 
+        fieldName, Descriptors.getDescriptor(fieldType));
+  }
+  /*
+   * public void rebindDimpleInterceptor(Object interceptee, Object overrider) {
+   *   this.interceptee = (Type)interceptee;
+   *   this.overrider = (OverriderType)overrider;
+   * }
+   */
+  static void generateRebindMethod(String className, Class<?> type, 
+      Class<?> overriderFieldType, ClassEmitter visitor) {
+    MethodEmitter code = visitor.visitMethod(Opcodes.ACC_PUBLIC, 
+        "rebindDimpleInterceptor", 
+        "(Ljava/lang/Object;Ljava/lang/Object;)V", null);
+    code.visitCode();
+    String internalName = toTypeInternalName(className);
+    generateFieldAssignment(internalName, INTERCEPTEE, type, 1, code);
+    generateFieldAssignment(internalName, OVERRIDER, overriderFieldType, 2, code);
+    code.visitInsn(Opcodes.RETURN);
+    code.visitEnd();
+  }
+  /*
+   * public Object newDimpleInterceptor(Object interceptee, Object overrider) {
+   *   return new Generated(interceptee, overrider);
+   * }
+   */
+  static void generateFactoryMethod(String className, ClassEmitter visitor) {
+    String internalName = toTypeInternalName(className);
+    MethodEmitter code = visitor.visitMethod(Opcodes.ACC_PUBLIC, 
+        "newDimpleInterceptor", 
+        "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", null);
+    code.visitCode();
+    code.visitTypeInsn(Opcodes.NEW, internalName);
+    code.visitInsn(Opcodes.DUP);
+    code.visitVarInsn(Opcodes.ALOAD, 1);
+    code.visitVarInsn(Opcodes.ALOAD, 2);
+    code.visitMethodInsn(Opcodes.INVOKESPECIAL, internalName, "<init>", 
+        INTERCEPTOR_CONSTRUCTOR_DESCRIPTOR);
+    code.visitInsn(Opcodes.ARETURN);
+    code.visitEnd();
+  }
   static void generateDefaultConstructor(
-      String typeDescriptor, ClassVisitor visitor) {
+      String typeDescriptor, Class<?> superclass, ClassEmitter visitor) {
     /*
      the current way only works for interface. 
      But it is concise because we can extend from a base class
      that defines the delegate target field already.
     */
-    MethodVisitor ctor = visitor.visitMethod(
-        Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    MethodEmitter ctor = visitor.visitMethod(
+        Opcodes.ACC_PUBLIC, "<init>", "()V", null);
     ctor.visitCode();
-    Label begin = new Label();
+    CodeLabel begin = new CodeLabel();
     ctor.visitLabel(begin);
     ctor.visitVarInsn(Opcodes.ALOAD, 0);
     ctor.visitMethodInsn(Opcodes.INVOKESPECIAL, 
-        Type.getInternalName(InternalDimpleInterceptorBase.class), "<init>", "()V");
+        Descriptors.getInternalName(superclass), "<init>", "()V");
     ctor.visitInsn(Opcodes.RETURN);
-    Label end = new Label();
+    CodeLabel end = new CodeLabel();
     ctor.visitLabel(end);
-    ctor.visitLocalVariable("this", typeDescriptor, null, begin, end, 0);
-    ctor.visitMaxs(1, 1);
+    ctor.visitLocalVariable("this", typeDescriptor, begin, end, 0);
     ctor.visitEnd();
   }
 }
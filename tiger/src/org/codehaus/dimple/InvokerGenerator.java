@@ -0,0 +1,197 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.objectweb.asm.Opcodes;
+
+/*
+ * This class is used to generate byte code of method invokers.
+ * A generated invoker switches on the method index and calls 
+ * the method directly, so no Method.invoke() is involved.
+ */
+class InvokerGenerator {
+  private static final String INVOKE_DESCRIPTOR = 
+    "(ILjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+  /**
+   * Generate an invoker whose <code>invoke(i, target, args)</code> calls
+   * <code>methods[i]</code> on <i>target</i>.
+   * <p>
+   * Elements of <i>methods</i> that cannot be called from generated code
+   * are set to null and will never be dispatched to.
+   * @param owner the type the methods are called on.
+   * @param methods the methods.
+   * @return the invoker instance.
+   */
+  static InternalDimpleMethodInvoker generateInvoker(Class<?> owner, Method[] methods) {
+    //we cannot define classes in java.* packages. Use our own package instead.
+    final boolean relocated = TypingUtils.isSystemClass(owner);
+    for(int i=0; i<methods.length; i++) {
+      if(!isCallable(owner, methods[i], relocated)) {
+        methods[i] = null;
+      }
+    }
+    Class<?> neighbor = InterceptorGenerator.getNeighbor(owner);
+    String className = InterceptorGenerator.qualify(
+        InterceptorGenerator.determinePackageName(neighbor),
+        getSimpleName(owner)+"$$DimpleInvoker"+InterceptorGenerator.nextSeed());
+    ClassEmitter classWriter = ClassEmitters.newClassEmitter();
+    classWriter.visit(Opcodes.V1_4, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, 
+        InterceptorGenerator.toTypeInternalName(className),
+        Descriptors.getInternalName(InternalDimpleMethodInvoker.class), null);
+    classWriter.visitSource(className+".class");
+    InterceptorGenerator.generateDefaultConstructor(
+        InterceptorGenerator.toTypeDescriptor(className), 
+        InternalDimpleMethodInvoker.class, classWriter);
+    generateInvokeMethod(owner, methods, classWriter);
+    classWriter.visitEnd();
+    Class<?> generatedClass = ClassDefiner.defineClass(
+        neighbor, className, classWriter.toByteArray());
+    try {
+      return (InternalDimpleMethodInvoker)generatedClass.getDeclaredConstructor().newInstance();
+    }
+    catch(InvocationTargetException e) {
+      throw Throwables.unchecked(e.getTargetException());
+    }
+    catch(Exception e) {
+      throw Throwables.unchecked(e);
+    }
+  }
+  private static String getSimpleName(Class<?> owner) {
+    String name = owner.getName();
+    return name.substring(name.lastIndexOf('.')+1);
+  }
+  static boolean isCallable(Class<?> owner, Method mtd, boolean relocated) {
+    if(mtd==null) return false;
+    if(owner.isInterface() && Modifier.isStatic(mtd.getModifiers())) {
+      //static interface methods need a newer class file format.
+      return false;
+    }
+    if(!isVisible(owner, owner, relocated)) return false;
+    for(Class<?> paramType : mtd.getParameterTypes()) {
+      if(!isVisible(paramType, owner, relocated)) return false;
+    }
+    return true;
+  }
+  /*
+   * Whether the generated class can legally refer to the type.
+   */
+  private static boolean isVisible(Class<?> type, Class<?> owner, boolean relocated) {
+    while(type.isArray()) {
+      type = type.getComponentType();
+    }
+    if(type.isPrimitive()) return true;
+    if(Modifier.isPublic(type.getModifiers())
+        && type.getModule().isExported(TypingUtils.getPackageName(type))) {
+      return true;
+    }
+    return !relocated && type.getClassLoader()==owner.getClassLoader()
+      && TypingUtils.getPackageName(type).equals(
+          TypingUtils.getPackageName(owner));
+  }
+  private static void generateInvokeMethod(Class<?> owner, Method[] methods, 
+      ClassEmitter classWriter) {
+    MethodEmitter code = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "invoke", 
+        INVOKE_DESCRIPTOR, new String[]{"java/lang/Throwable"});
+    code.visitCode();
+    CodeLabel unknown = new CodeLabel();
+    if(methods.length > 0) {
+      CodeLabel[] cases = new CodeLabel[methods.length];
+      for(int i=0; i<cases.length; i++) {
+        cases[i] = methods[i]==null?unknown:new CodeLabel();
+      }
+      code.visitVarInsn(Opcodes.ILOAD, 1);
+      code.visitTableSwitchInsn(0, cases.length-1, unknown, cases);
+      for(int i=0; i<methods.length; i++) {
+        if(methods[i]==null) continue;
+        code.visitLabel(cases[i]);
+        generateCall(owner, methods[i], code);
+      }
+    }
+    code.visitLabel(unknown);
+    code.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalArgumentException");
+    code.visitInsn(Opcodes.DUP);
+    code.visitMethodInsn(Opcodes.INVOKESPECIAL, 
+        "java/lang/IllegalArgumentException", "<init>", "()V");
+    code.visitInsn(Opcodes.ATHROW);
+    code.visitEnd();
+  }
+  private static void generateCall(Class<?> owner, Method mtd, MethodEmitter code) {
+    final String ownerName = Descriptors.getInternalName(owner);
+    final int invokeOp;
+    if(Modifier.isStatic(mtd.getModifiers())) {
+      invokeOp = Opcodes.INVOKESTATIC;
+    }
+    else {
+      invokeOp = owner.isInterface()?Opcodes.INVOKEINTERFACE:Opcodes.INVOKEVIRTUAL;
+      code.visitVarInsn(Opcodes.ALOAD, 2);
+      if(!Object.class.equals(owner)) {
+        code.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+      }
+    }
+    Class<?>[] paramTypes = mtd.getParameterTypes();
+    for(int i=0; i<paramTypes.length; i++) {
+      code.visitVarInsn(Opcodes.ALOAD, 3);
+      pushInt(code, i);
+      code.visitInsn(Opcodes.AALOAD);
+      unbox(code, paramTypes[i]);
+    }
+    code.visitMethodInsn(invokeOp, ownerName, mtd.getName(), 
+        Descriptors.getMethodDescriptor(mtd));
+    box(code, mtd.getReturnType());
+    code.visitInsn(Opcodes.ARETURN);
+  }
+  static void pushInt(MethodEmitter code, int i) {
+    if(i <= 5) {
+      code.visitInsn(Opcodes.ICONST_0+i);
+    }
+    else if(i <= Byte.MAX_VALUE) {
+      code.visitIntInsn(Opcodes.BIPUSH, i);
+    }
+    else if(i <= Short.MAX_VALUE) {
+      code.visitIntInsn(Opcodes.SIPUSH, i);
+    }
+    else {
+      code.visitLdcInsn(Integer.valueOf(i));
+    }
+  }
+  /*
+   * Convert the Object on top of stack to the given type.
+   */
+  static void unbox(MethodEmitter code, Class<?> type) {
+    if(type.isPrimitive()) {
+      String wrapperName = getWrapperName(type);
+      code.visitTypeInsn(Opcodes.CHECKCAST, wrapperName);
+      code.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapperName, 
+          type.getName()+"Value", "()"+Descriptors.getDescriptor(type));
+    }
+    else if(!Object.class.equals(type)) {
+      code.visitTypeInsn(Opcodes.CHECKCAST, Descriptors.getInternalName(type));
+    }
+  }
+  /*
+   * Convert the value of the given type on top of stack to Object.
+   */
+  static void box(MethodEmitter code, Class<?> type) {
+    if(void.class.equals(type)) {
+      code.visitInsn(Opcodes.ACONST_NULL);
+    }
+    else if(type.isPrimitive()) {
+      String wrapperName = getWrapperName(type);
+      code.visitMethodInsn(Opcodes.INVOKESTATIC, wrapperName, "valueOf", 
+          "("+Descriptors.getDescriptor(type)+")L"+wrapperName+";");
+    }
+  }
+  private static String getWrapperName(Class<?> primitive) {
+    if(boolean.class.equals(primitive)) return "java/lang/Boolean";
+    if(char.class.equals(primitive)) return "java/lang/Character";
+    if(byte.class.equals(primitive)) return "java/lang/Byte";
+    if(short.class.equals(primitive)) return "java/lang/Short";
+    if(int.class.equals(primitive)) return "java/lang/Integer";
+    if(long.class.equals(primitive)) return "java/lang/Long";
+    if(float.class.equals(primitive)) return "java/lang/Float";
+    if(double.class.equals(primitive)) return "java/lang/Double";
+    throw new IllegalArgumentException(primitive.getName());
+  }
+}
@@ -0,0 +1,104 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.Method;
+
+/**
+ * The resolved dispatch decision for one implemented method.
+ * <p>
+ * A binding is computed once per implemented method by {@link Implementor}
+ * and then reused by every proxy call, so that the name lookup, overload scan
+ * and parameter compatibility checks are not repeated.
+ *
+ * @author Ben Yu
+ */
+final class MethodBinding {
+  private final Class<?> implClass;
+  private final DispatchStrategy dispatch;
+  private final Method implemented;
+  private final Method implementing;
+  private final boolean objectMethod;
+  private final boolean implementedEquals;
+  private final boolean implementingEquals;
+  private volatile MethodInvoker implementedInvoker;
+  private volatile MethodInvoker implementingInvoker;
+  MethodBinding(Class<?> implClass, DispatchStrategy dispatch, 
+      Method implemented, Method implementing) {
+    this.implClass = implClass;
+    this.dispatch = dispatch;
+    this.implemented = implemented;
+    this.implementing = implementing;
+    this.objectMethod = implementing != null
+      && Object.class.equals(implementing.getDeclaringClass());
+    this.implementedEquals = isEqualsMethod(implemented);
+    this.implementingEquals = implementing != null && isEqualsMethod(implementing);
+  }
+  /**
+   * Get the method being implemented.
+   */
+  Method getImplemented() {
+    return implemented;
+  }
+  /**
+   * Get the method of the impl class used to implement, or null if not implemented.
+   */
+  Method getImplementing() {
+    return implementing;
+  }
+  /**
+   * To determine whether the call should go to the default delegate or default handler.
+   * @param hasDefault whether a default delegate or default handler is present.
+   * @return true if the call should be forwarded.
+   */
+  boolean isDefault(boolean hasDefault) {
+    //forward call for default hashCode/equals/toString
+    return implementing == null || (hasDefault && objectMethod);
+  }
+  /**
+   * Whether the implementing method is the equals() method of Object itself.
+   */
+  boolean isNativeEquals() {
+    return implementingEquals && objectMethod;
+  }
+  /**
+   * Whether the implementing method is an equals(Object) method.
+   */
+  boolean isImplementingEquals() {
+    return implementingEquals;
+  }
+  /**
+   * Whether the implemented method is an equals(Object) method.
+   */
+  boolean isImplementedEquals() {
+    return implementedEquals;
+  }
+  /**
+   * Call the implementing method on an instance of the impl class.
+   */
+  Object invokeImplementing(Object instance, Object[] args) throws Throwable {
+    MethodInvoker invoker = implementingInvoker;
+    if(invoker == null) {
+      invoker = dispatch.getInvoker(implClass, implementing);
+      implementingInvoker = invoker;
+    }
+    return invoker.invoke(instance, args);
+  }
+  /**
+   * Call the implemented method on the default delegate.
+   */
+  Object invokeImplemented(Object delegate, Object[] args) throws Throwable {
+    MethodInvoker invoker = implementedInvoker;
+    if(invoker == null) {
+      invoker = dispatch.getInvoker(implemented.getDeclaringClass(), implemented);
+      implementedInvoker = invoker;
+    }
+    return invoker.invoke(delegate, args);
+  }
+  private static boolean isEqualsMethod(Method mtd) {
+    final Class[] params = mtd.getParameterTypes();
+    return params.length==1 && Implementor.EQUALS.equals(mtd.getName())
+      && Object.class.equals(params[0]);
+  }
+  public String toString() {
+    return implemented + " -> " + implementing;
+  }
+}
@@ -0,0 +1,34 @@
+package org.codehaus.dimple;
+
+/**
+ * Writes the code of one method of a generated class.
+ * <p>
+ * The methods have the same meaning as their counterparts in asm's MethodVisitor.
+ * @author benyu
+ */
+interface MethodEmitter {
+  void visitCode();
+  void visitInsn(int opcode);
+  void visitIntInsn(int opcode, int operand);
+  void visitVarInsn(int opcode, int var);
+  void visitTypeInsn(int opcode, String type);
+  void visitFieldInsn(int opcode, String owner, String name, String descriptor);
+  void visitMethodInsn(int opcode, String owner, String name, String descriptor);
+  void visitJumpInsn(int opcode, CodeLabel label);
+  void visitLabel(CodeLabel label);
+  /**
+   * Push a constant.
+   * @param cst a String or an Integer.
+   */
+  void visitLdcInsn(Object cst);
+  void visitTableSwitchInsn(int min, int max, CodeLabel dflt, CodeLabel[] labels);
+  /**
+   * Declare a local variable for debuggers. Emitters may ignore it.
+   */
+  void visitLocalVariable(String name, String descriptor, 
+      CodeLabel start, CodeLabel end, int index);
+  /**
+   * End the method. Max stack and max locals are computed.
+   */
+  void visitEnd();
+}
@@ -0,0 +1,19 @@
+package org.codehaus.dimple;
+
+/**
+ * Calls one method on a target object with boxed arguments.
+ * <p>
+ * Implementations either use reflection or a generated
+ * {@link InternalDimpleMethodInvoker}.
+ * @author benyu
+ */
+interface MethodInvoker {
+  /**
+   * Invoke the method.
+   * @param target the target object. Ignored for static methods.
+   * @param args the arguments. null if no argument.
+   * @return the return value, boxed if primitive.
+   * @throws Throwable any exception thrown by the method, not wrapped.
+   */
+  Object invoke(Object target, Object[] args) throws Throwable;
+}
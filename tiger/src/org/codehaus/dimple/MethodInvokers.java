@@ -0,0 +1,213 @@
+package org.codehaus.dimple;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Factory of {@link MethodInvoker} objects.
+ * <p>
+ * Generated invokers are created once per owner class and shared by all methods
+ * of that class. When asm or cglib is not in classpath, or the class
+ * cannot be generated, reflection is used instead.
+ * @author benyu
+ */
+final class MethodInvokers {
+  private MethodInvokers() {}
+  /**
+   * Get a MethodInvoker that uses {@link Method#invoke(Object, Object[])}.
+   * @param mtd the method.
+   * @return the MethodInvoker object.
+   */
+  static MethodInvoker reflective(final Method mtd) {
+    return new MethodInvoker() {
+      public Object invoke(Object target, Object[] args) throws Throwable {
+        try {
+          return mtd.invoke(target, args);
+        }
+        catch(InvocationTargetException e){
+          throw e.getTargetException();
+        }
+      }
+      public String toString() {
+        return mtd.toString();
+      }
+    };
+  }
+  /**
+   * Get a MethodInvoker that calls <i>mtd</i> through a generated invoker of <i>owner</i>.
+   * Reflection is used if such invoker is not available.
+   * @param owner the type the method is called on.
+   * <i>mtd</i> should be one of the public methods of this type.
+   * @param mtd the method.
+   * @return the MethodInvoker object.
+   */
+  static MethodInvoker generated(Class<?> owner, Method mtd) {
+    final InvokerTable table = getInvokerTable(owner);
+    if(table != null) {
+      final Integer index = table.indexes.get(mtd);
+      if(index != null) {
+        return new GeneratedMethodInvoker(table.invoker, index.intValue(), mtd);
+      }
+    }
+    return reflective(mtd);
+  }
+  private static final MethodType INVOKER_TYPE = 
+    MethodType.methodType(Object.class, Object.class, Object[].class);
+  /**
+   * Get a MethodInvoker that calls <i>mtd</i> through a {@link MethodHandle}
+   * adapted to <code>(Object, Object[])Object</code>.
+   * Reflection is used if the method cannot be accessed with a MethodHandle.
+   * @param mtd the method.
+   * @return the MethodInvoker object.
+   */
+  static MethodInvoker methodHandle(Method mtd) {
+    MethodHandle handle;
+    try {
+      handle = unreflect(mtd);
+    }
+    catch(IllegalAccessException e) {
+      return reflective(mtd);
+    }
+    if(Modifier.isStatic(mtd.getModifiers())) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class);
+    }
+    handle = handle.asSpreader(Object[].class, mtd.getParameterTypes().length)
+      .asType(INVOKER_TYPE);
+    return new MethodHandleInvoker(handle, mtd);
+  }
+  static MethodHandle unreflect(Method mtd) throws IllegalAccessException {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      return lookup.unreflect(mtd);
+    }
+    catch(IllegalAccessException e) {
+      //public method of a non-public class.
+      return MethodHandles.privateLookupIn(mtd.getDeclaringClass(), lookup).unreflect(mtd);
+    }
+  }
+  /**
+   * Get a MethodHandle that runs the default body of a method inherited by
+   * the lookup class of <i>caller</i>, even if the lookup class overrides it.
+   * @param caller the lookup with private access to the inheriting class.
+   * @param typeName the name of the super type the method is inherited from.
+   * @param name the name of the method.
+   * @param descriptor the descriptor of the method.
+   * @return the MethodHandle, with the super type as receiver.
+   */
+  static MethodHandle findDefault(MethodHandles.Lookup caller,
+      String typeName, String name, String descriptor) throws ReflectiveOperationException {
+    final Class<?> callerClass = caller.lookupClass();
+    final ClassLoader loader = callerClass.getClassLoader();
+    final Class<?> type = Class.forName(typeName, false, loader);
+    final MethodHandle handle = caller.findSpecial(type, name,
+        MethodType.fromMethodDescriptorString(descriptor, loader), callerClass);
+    return handle.asType(handle.type().changeParameterType(0, type));
+  }
+  static final class MethodHandleInvoker implements MethodInvoker {
+    private final MethodHandle handle;
+    private final Method method;
+    MethodHandleInvoker(MethodHandle handle, Method method) {
+      this.handle = handle;
+      this.method = method;
+    }
+    public Object invoke(Object target, Object[] args) throws Throwable {
+      return (Object)handle.invokeExact(target, args);
+    }
+    public String toString() {
+      return method.toString();
+    }
+  }
+  static final class GeneratedMethodInvoker implements MethodInvoker {
+    private final InternalDimpleMethodInvoker invoker;
+    private final int index;
+    private final Method method;
+    GeneratedMethodInvoker(InternalDimpleMethodInvoker invoker, int index, Method method) {
+      this.invoker = invoker;
+      this.index = index;
+      this.method = method;
+    }
+    public Object invoke(Object target, Object[] args) throws Throwable {
+      return invoker.invoke(index, target, args);
+    }
+    public String toString() {
+      return method.toString();
+    }
+  }
+  private static final class InvokerTable {
+    final InternalDimpleMethodInvoker invoker;
+    final Map<Method, Integer> indexes;
+    InvokerTable(InternalDimpleMethodInvoker invoker, Map<Method, Integer> indexes) {
+      this.invoker = invoker;
+      this.indexes = indexes;
+    }
+  }
+  /*
+   * false once we know asm or cglib cannot be used.
+   */
+  private static volatile boolean available = true;
+  private static final InvokerTable NO_INVOKER =
+    new InvokerTable(null, new HashMap<Method, Integer>());
+  /*
+   * tables of application classes are attached to the class itself,
+   * so they go away together with the class loader.
+   */
+  private static final ClassValue<InvokerTable> tables = new ClassValue<InvokerTable>() {
+    protected InvokerTable computeValue(Class<?> owner) {
+      return generateInvokerTable(owner);
+    }
+  };
+  /*
+   * invokers of java.* classes are defined in our own class loader.
+   * They must not be attached to the system classes, or we are never unloaded.
+   */
+  private static final ConcurrentMap<Class<?>, InvokerTable> relocatedTables =
+    new ConcurrentHashMap<Class<?>, InvokerTable>();
+  private static InvokerTable getInvokerTable(Class<?> owner) {
+    if(!available) return null;
+    if(!TypingUtils.isSystemClass(owner)) {
+      return tables.get(owner);
+    }
+    InvokerTable table = relocatedTables.get(owner);
+    if(table == null) {
+      table = generateInvokerTable(owner);
+      final InvokerTable existing = relocatedTables.putIfAbsent(owner, table);
+      if(existing != null) return existing;
+    }
+    return table;
+  }
+  private static InvokerTable generateInvokerTable(Class<?> owner) {
+    if(Proxy.isProxyClass(owner) || owner.getName().indexOf('/')>=0) {
+      //dynamic proxies and hidden classes cannot be referred to by name.
+      return NO_INVOKER;
+    }
+    final Method[] methods = owner.getMethods();
+    final InternalDimpleMethodInvoker invoker;
+    try {
+      invoker = InvokerGenerator.generateInvoker(owner, methods);
+    }
+    catch(LinkageError e) {
+      //asm or cglib is not usable.
+      available = false;
+      return NO_INVOKER;
+    }
+    catch(RuntimeException e) {
+      return NO_INVOKER;
+    }
+    final HashMap<Method, Integer> indexes = new HashMap<Method, Integer>();
+    for(int i=0; i<methods.length; i++) {
+      if(methods[i] != null) {
+        indexes.put(methods[i], Integer.valueOf(i));
+      }
+    }
+    return new InvokerTable(invoker, indexes);
+  }
+}
@@ -0,0 +1,47 @@
+package org.codehaus.dimple;
+
+/**
+ * Finds the interceptor classes generated at compile time by {@link ImplementProcessor}.
+ * <p>
+ * A precompiled interceptor is defined next to the impl class,
+ * and named after the impl class and the intercepted type,
+ * so it is found without scanning the class path.
+ * @author benyu
+ */
+final class PrecompiledInterceptors {
+  private PrecompiledInterceptors() {}
+  /**
+   * Get the name of the precompiled interceptor.
+   * @param implName the binary name of the impl class.
+   * @param typeName the binary name of the intercepted type.
+   * @param reusable whether the name of the reusable variant is requested.
+   * @return the binary name of the interceptor class.
+   */
+  static String getClassName(String implName, String typeName, boolean reusable) {
+    final int dot = implName.lastIndexOf('.');
+    return implName.substring(0, dot+1) + implName.substring(dot+1).replace('$', '_')
+      + (reusable?"$$DimpleReusableInterceptor$$":"$$DimpleInterceptor$$")
+      + typeName.replace('.', '_').replace('$', '_');
+  }
+  /**
+   * Get the precompiled interceptor class.
+   * @param type the intercepted type.
+   * @param implClass the impl class.
+   * @param reusable whether the reusable variant is requested.
+   * @return the class, or null if none was generated.
+   */
+  static Class<?> find(Class<?> type, Class<?> implClass, boolean reusable) {
+    final Class<?> found;
+    try {
+      found = Class.forName(getClassName(implClass.getName(), type.getName(), reusable),
+          false, implClass.getClassLoader());
+    }
+    catch(ClassNotFoundException e) {
+      return null;
+    }
+    final Class<?> expected = reusable?
+      InternalDimpleReusableInterceptor.class:InternalDimpleInterceptor.class;
+    //a stale class left over from a renamed type is ignored.
+    return (type.isAssignableFrom(found) && expected.isAssignableFrom(found))?found:null;
+  }
+}
@@ -0,0 +1,28 @@
+package org.codehaus.dimple;
+
+/**
+ * A single generated interceptor instance whose intercepted object
+ * and overrider can be replaced.
+ * <p>
+ * Rebinding allocates nothing, which makes it suitable for wrapping 
+ * a large number of objects one at a time.
+ * The same instance is returned by every {@link #rebind(Object, Object)} call,
+ * so the result should not be kept after the next rebind.
+ * <p>
+ * ReusableInterceptor is not thread safe. It should be confined to one thread.
+ * @author benyu
+ *
+ * @param <T> the type to be stubbed/intercepted.
+ * @param <Impl> the type used to stub or intercept.
+ */
+public interface ReusableInterceptor<T, Impl> {
+  /**
+   * To make the reusable instance backed by {@code intercepted}
+   * and intercepted by {@code overrider}.
+   * @param intercepted the intercepted instance. 
+   * If null, the instance behaves as a stub.
+   * @param overrider the instance used to intercept.
+   * @return the reusable instance.
+   */
+  T rebind(T intercepted, Impl overrider);
+}
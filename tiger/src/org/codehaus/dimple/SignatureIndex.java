@@ -0,0 +1,117 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The public methods of a type to implement, indexed by name,
+ * with their parameter types resolved once.
+ * <p>
+ * The index of a type is built once and shared, so checking an impl class
+ * against a type only compares the methods of the same name.
+ * @author benyu
+ */
+final class SignatureIndex {
+  private static final class Signature {
+    final Method method;
+    final Class<?>[] parameterTypes;
+    Signature(Method method) {
+      this.method = method;
+      this.parameterTypes = method.getParameterTypes();
+    }
+  }
+  private final Method[] methods;
+  private final Map<String, Signature[]> signatures;
+  SignatureIndex(Method[] methods) {
+    this.methods = methods;
+    final Map<String, List<Signature>> suites = new HashMap<String, List<Signature>>();
+    for(Method mtd : methods) {
+      List<Signature> suite = suites.get(mtd.getName());
+      if(suite == null) {
+        suite = new ArrayList<Signature>(1);
+        suites.put(mtd.getName(), suite);
+      }
+      suite.add(new Signature(mtd));
+    }
+    this.signatures = new HashMap<String, Signature[]>(suites.size()*4/3+1);
+    for(Map.Entry<String, List<Signature>> entry : suites.entrySet()) {
+      final List<Signature> suite = entry.getValue();
+      signatures.put(entry.getKey(), suite.toArray(new Signature[suite.size()]));
+    }
+  }
+  /**
+   * Get the indexed methods. The array is shared and must not be modified.
+   */
+  Method[] getMethods() {
+    return methods;
+  }
+  /**
+   * Find the first method, in the order of {@link #getMethods()},
+   * that can be implemented by a method with the given name and parameter types.
+   * @param name the method name.
+   * @param implementingParams the parameter types of the implementing method.
+   * @return the method, or null if none.
+   */
+  Method findImplemented(String name, Class<?>[] implementingParams) {
+    final Signature[] suite = signatures.get(name);
+    if(suite == null) return null;
+    for(Signature signature : suite) {
+      if(TypingUtils.isParamsCompatible(implementingParams, signature.parameterTypes)) {
+        return signature.method;
+      }
+    }
+    return null;
+  }
+  private static final SignatureIndex OBJECT_METHODS = new SignatureIndex(
+      TypingUtils.objectMethodsSignatures.toArray(
+          new Method[TypingUtils.objectMethodsSignatures.size()]));
+  /*
+   * indexes of application classes are attached to the class itself.
+   */
+  private static final ClassValue<SignatureIndex> indexes = new ClassValue<SignatureIndex>() {
+    protected SignatureIndex computeValue(Class<?> type) {
+      return new SignatureIndex(type.getMethods());
+    }
+  };
+  /*
+   * indexes of java.* types must not be attached to the system classes, or we are never unloaded.
+   */
+  private static final ConcurrentMap<Class<?>, SignatureIndex> systemIndexes =
+    new ConcurrentHashMap<Class<?>, SignatureIndex>();
+  /**
+   * Get the index of the public methods of a type.
+   * @param type the type.
+   * @return the shared index.
+   */
+  static SignatureIndex getIndex(Class<?> type) {
+    if(!TypingUtils.isSystemClass(type)) {
+      return indexes.get(type);
+    }
+    SignatureIndex index = systemIndexes.get(type);
+    if(index == null) {
+      index = new SignatureIndex(type.getMethods());
+      final SignatureIndex existing = systemIndexes.putIfAbsent(type, index);
+      if(existing != null) return existing;
+    }
+    return index;
+  }
+  /**
+   * Get the indexes of all methods to implement for a set of types:
+   * the public methods of each type, in order, followed by equals, hashCode and toString.
+   * @param asTypes the types to implement.
+   * @return the indexes, in the order they are searched.
+   */
+  static SignatureIndex[] getIndexes(Class<?>[] asTypes) {
+    final SignatureIndex[] result = new SignatureIndex[asTypes.length+1];
+    for(int i=0; i<asTypes.length; i++) {
+      result[i] = getIndex(asTypes[i]);
+    }
+    result[asTypes.length] = OBJECT_METHODS;
+    return result;
+  }
+}
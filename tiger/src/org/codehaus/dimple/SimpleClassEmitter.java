@@ -0,0 +1,488 @@
+package org.codehaus.dimple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A minimal ClassEmitter that writes class files without any library.
+ * <p>
+ * It supports the instructions dimple generates, 
+ * and class file versions that need no stack map frames.
+ * Local variable declarations are ignored.
+ * Only compile time constants of asm are used, so asm is not needed at runtime.
+ * @author benyu
+ */
+final class SimpleClassEmitter implements ClassEmitter {
+  private static final int WIDE = 196;
+  private static final int LDC_W = 19;
+  private final ConstantPool pool = new ConstantPool();
+  private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+  private final List<SimpleMethodEmitter> methods = new ArrayList<SimpleMethodEmitter>();
+  private int version;
+  private int access;
+  private int thisClass;
+  private int superClass;
+  private int[] interfaces;
+  private int fieldCount = 0;
+  private int sourceFile = 0;
+  private byte[] bytes;
+  public void visit(int version, int access, String name, String superName,
+      String[] interfaces) {
+    this.version = version;
+    this.access = access;
+    this.thisClass = pool.newClass(name);
+    this.superClass = pool.newClass(superName);
+    this.interfaces = toClassIndexes(interfaces);
+  }
+  private int[] toClassIndexes(String[] names) {
+    if(names == null) return new int[0];
+    int[] indexes = new int[names.length];
+    for(int i=0; i<names.length; i++) {
+      indexes[i] = pool.newClass(names[i]);
+    }
+    return indexes;
+  }
+  public void visitSource(String source) {
+    sourceFile = pool.newUtf8(source);
+  }
+  public void visitField(int access, String name, String descriptor) {
+    writeShort(fields, access);
+    writeShort(fields, pool.newUtf8(name));
+    writeShort(fields, pool.newUtf8(descriptor));
+    writeShort(fields, 0);
+    fieldCount++;
+  }
+  public MethodEmitter visitMethod(int access, String name, String descriptor,
+      String[] exceptions) {
+    SimpleMethodEmitter method = new SimpleMethodEmitter(
+        access, name, descriptor, toClassIndexes(exceptions));
+    methods.add(method);
+    return method;
+  }
+  public void visitEnd() {
+    if(sourceFile != 0) {
+      pool.newUtf8("SourceFile");
+    }
+    for(SimpleMethodEmitter method : methods) {
+      method.prepare();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeInt(out, 0xCAFEBABE);
+    writeShort(out, version >>> 16);
+    writeShort(out, version & 0xFFFF);
+    pool.writeTo(out);
+    writeShort(out, access);
+    writeShort(out, thisClass);
+    writeShort(out, superClass);
+    writeShort(out, interfaces.length);
+    for(int itf : interfaces) {
+      writeShort(out, itf);
+    }
+    writeShort(out, fieldCount);
+    out.write(fields.toByteArray(), 0, fields.size());
+    writeShort(out, methods.size());
+    for(SimpleMethodEmitter method : methods) {
+      method.writeTo(out);
+    }
+    if(sourceFile != 0) {
+      writeShort(out, 1);
+      writeShort(out, pool.newUtf8("SourceFile"));
+      writeInt(out, 2);
+      writeShort(out, sourceFile);
+    }
+    else {
+      writeShort(out, 0);
+    }
+    bytes = out.toByteArray();
+  }
+  public byte[] toByteArray() {
+    return bytes;
+  }
+  static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 8);
+    out.write(value);
+  }
+  static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >>> 16);
+    writeShort(out, value);
+  }
+  /*
+   * Constant pool entries are shared by equal keys.
+   */
+  private static final class ConstantPool {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream data = new DataOutputStream(bytes);
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private int count = 1;
+    private Integer get(String key) {
+      return indexes.get(key);
+    }
+    private int put(String key) {
+      int index = count++;
+      indexes.put(key, Integer.valueOf(index));
+      return index;
+    }
+    int newUtf8(String value) {
+      String key = "utf8 " + value;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      bytes.write(1);
+      try {
+        //the modified UTF-8 of class files.
+        data.writeUTF(value);
+      }
+      catch(IOException e) {
+        throw new IllegalStateException(e);
+      }
+      return put(key);
+    }
+    int newClass(String internalName) {
+      String key = "class " + internalName;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      int name = newUtf8(internalName);
+      bytes.write(7);
+      writeShort(bytes, name);
+      return put(key);
+    }
+    int newString(String value) {
+      String key = "string " + value;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      int utf8 = newUtf8(value);
+      bytes.write(8);
+      writeShort(bytes, utf8);
+      return put(key);
+    }
+    int newInteger(int value) {
+      String key = "int " + value;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      bytes.write(3);
+      writeInt(bytes, value);
+      return put(key);
+    }
+    int newNameAndType(String name, String descriptor) {
+      String key = "nat " + name + " " + descriptor;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      int nameIndex = newUtf8(name);
+      int descriptorIndex = newUtf8(descriptor);
+      bytes.write(12);
+      writeShort(bytes, nameIndex);
+      writeShort(bytes, descriptorIndex);
+      return put(key);
+    }
+    /*
+     * tag is 9 for fields, 10 for methods and 11 for interface methods.
+     */
+    int newMember(int tag, String owner, String name, String descriptor) {
+      String key = tag + " " + owner + " " + name + " " + descriptor;
+      Integer index = get(key);
+      if(index != null) return index.intValue();
+      int ownerIndex = newClass(owner);
+      int nameAndType = newNameAndType(name, descriptor);
+      bytes.write(tag);
+      writeShort(bytes, ownerIndex);
+      writeShort(bytes, nameAndType);
+      return put(key);
+    }
+    void writeTo(ByteArrayOutputStream out) {
+      writeShort(out, count);
+      out.write(bytes.toByteArray(), 0, bytes.size());
+    }
+  }
+  /*
+   * Writes the code and tracks the stack depth as it goes.
+   * Code after an unconditional jump, return or throw is only reachable 
+   * through a label, which remembers the stack depth of the jump to it.
+   */
+  private final class SimpleMethodEmitter implements MethodEmitter {
+    private final int access;
+    private final int name;
+    private final int descriptor;
+    private final int[] exceptions;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Object[]> fixups = new ArrayList<Object[]>();
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+    private boolean reachable = true;
+    private byte[] bytecode;
+    SimpleMethodEmitter(int access, String name, String descriptor, int[] exceptions) {
+      this.access = access;
+      this.name = pool.newUtf8(name);
+      this.descriptor = pool.newUtf8(descriptor);
+      this.exceptions = exceptions;
+      this.maxLocals = Descriptors.getParameterSize(descriptor)
+        + ((access & Opcodes.ACC_STATIC)==0?1:0);
+    }
+    private void push(int size) {
+      stack += size;
+      if(stack > maxStack) {
+        maxStack = stack;
+      }
+    }
+    private void pop(int size) {
+      stack -= size;
+    }
+    private void terminate() {
+      reachable = false;
+      stack = 0;
+    }
+    private void use(int var, int size) {
+      if(var + size > maxLocals) {
+        maxLocals = var + size;
+      }
+    }
+    public void visitCode() {}
+    public void visitInsn(int opcode) {
+      code.write(opcode);
+      switch(opcode) {
+      case Opcodes.NOP: case Opcodes.SWAP: case Opcodes.ARRAYLENGTH:
+      case Opcodes.LALOAD: case Opcodes.DALOAD:
+        break;
+      case Opcodes.ACONST_NULL: case Opcodes.ICONST_M1: case Opcodes.ICONST_0: 
+      case Opcodes.ICONST_1: case Opcodes.ICONST_2: case Opcodes.ICONST_3: 
+      case Opcodes.ICONST_4: case Opcodes.ICONST_5: case Opcodes.FCONST_0: 
+      case Opcodes.FCONST_1: case Opcodes.FCONST_2: 
+      case Opcodes.DUP: case Opcodes.DUP_X1: case Opcodes.DUP_X2:
+        push(1);
+        break;
+      case Opcodes.LCONST_0: case Opcodes.LCONST_1: 
+      case Opcodes.DCONST_0: case Opcodes.DCONST_1: case Opcodes.DUP2:
+        push(2);
+        break;
+      case Opcodes.IALOAD: case Opcodes.FALOAD: case Opcodes.AALOAD: 
+      case Opcodes.BALOAD: case Opcodes.CALOAD: case Opcodes.SALOAD:
+      case Opcodes.POP:
+        pop(1);
+        break;
+      case Opcodes.POP2:
+        pop(2);
+        break;
+      case Opcodes.IRETURN: case Opcodes.LRETURN: case Opcodes.FRETURN:
+      case Opcodes.DRETURN: case Opcodes.ARETURN: case Opcodes.RETURN:
+      case Opcodes.ATHROW:
+        terminate();
+        break;
+      default:
+        throw new IllegalArgumentException("unsupported opcode " + opcode);
+      }
+    }
+    public void visitIntInsn(int opcode, int operand) {
+      code.write(opcode);
+      if(opcode == Opcodes.SIPUSH) {
+        writeShort(code, operand);
+      }
+      else {
+        code.write(operand);
+      }
+      if(opcode != Opcodes.NEWARRAY) {
+        push(1);
+      }
+    }
+    public void visitVarInsn(int opcode, int var) {
+      if(var > 255) {
+        code.write(WIDE);
+        code.write(opcode);
+        writeShort(code, var);
+      }
+      else {
+        code.write(opcode);
+        code.write(var);
+      }
+      boolean wide = opcode==Opcodes.LLOAD || opcode==Opcodes.DLOAD 
+        || opcode==Opcodes.LSTORE || opcode==Opcodes.DSTORE;
+      int size = wide?2:1;
+      use(var, size);
+      if(opcode >= Opcodes.ISTORE) {
+        pop(size);
+      }
+      else {
+        push(size);
+      }
+    }
+    public void visitTypeInsn(int opcode, String type) {
+      code.write(opcode);
+      writeShort(code, pool.newClass(type));
+      if(opcode == Opcodes.NEW) {
+        push(1);
+      }
+    }
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+      code.write(opcode);
+      writeShort(code, pool.newMember(9, owner, name, descriptor));
+      int size = Descriptors.getSize(descriptor);
+      switch(opcode) {
+      case Opcodes.GETSTATIC:
+        push(size);
+        break;
+      case Opcodes.PUTSTATIC:
+        pop(size);
+        break;
+      case Opcodes.GETFIELD:
+        pop(1);
+        push(size);
+        break;
+      default:
+        pop(1 + size);
+      }
+    }
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor) {
+      boolean itf = opcode == Opcodes.INVOKEINTERFACE;
+      int parameterSize = Descriptors.getParameterSize(descriptor);
+      code.write(opcode);
+      writeShort(code, pool.newMember(itf?11:10, owner, name, descriptor));
+      if(itf) {
+        code.write(parameterSize + 1);
+        code.write(0);
+      }
+      pop(parameterSize + (opcode==Opcodes.INVOKESTATIC?0:1));
+      push(Descriptors.getReturnSize(descriptor));
+    }
+    public void visitJumpInsn(int opcode, CodeLabel label) {
+      int position = code.size();
+      if(opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ACMPNE) {
+        pop(2);
+      }
+      else if(opcode != Opcodes.GOTO) {
+        pop(1);
+      }
+      code.write(opcode);
+      addOffset(position, label, false);
+      reach(label);
+      if(opcode == Opcodes.GOTO) {
+        terminate();
+      }
+    }
+    private void reach(CodeLabel label) {
+      if(label.stackDepth < 0) {
+        label.stackDepth = stack;
+      }
+    }
+    private void addOffset(int instruction, CodeLabel label, boolean wide) {
+      fixups.add(new Object[]{Integer.valueOf(instruction), 
+          Integer.valueOf(code.size()), label, Boolean.valueOf(wide)});
+      if(wide) {
+        writeInt(code, 0);
+      }
+      else {
+        writeShort(code, 0);
+      }
+    }
+    public void visitLabel(CodeLabel label) {
+      label.position = code.size();
+      if(!reachable) {
+        stack = label.stackDepth<0?0:label.stackDepth;
+        reachable = true;
+      }
+      reach(label);
+    }
+    public void visitLdcInsn(Object cst) {
+      int index;
+      if(cst instanceof String) {
+        index = pool.newString((String)cst);
+      }
+      else if(cst instanceof Integer) {
+        index = pool.newInteger(((Integer)cst).intValue());
+      }
+      else {
+        throw new IllegalArgumentException("unsupported constant " + cst);
+      }
+      if(index > 255) {
+        code.write(LDC_W);
+        writeShort(code, index);
+      }
+      else {
+        code.write(Opcodes.LDC);
+        code.write(index);
+      }
+      push(1);
+    }
+    public void visitTableSwitchInsn(int min, int max, CodeLabel dflt, CodeLabel[] labels) {
+      int position = code.size();
+      pop(1);
+      code.write(Opcodes.TABLESWITCH);
+      while(code.size() % 4 != 0) {
+        code.write(0);
+      }
+      addOffset(position, dflt, true);
+      writeInt(code, min);
+      writeInt(code, max);
+      reach(dflt);
+      for(CodeLabel label : labels) {
+        addOffset(position, label, true);
+        reach(label);
+      }
+      terminate();
+    }
+    public void visitLocalVariable(String name, String descriptor, 
+        CodeLabel start, CodeLabel end, int index) {
+      //debug information is not written.
+    }
+    public void visitEnd() {
+      byte[] bytes = code.toByteArray();
+      for(Object[] fixup : fixups) {
+        int instruction = ((Integer)fixup[0]).intValue();
+        int at = ((Integer)fixup[1]).intValue();
+        CodeLabel label = (CodeLabel)fixup[2];
+        if(label.position < 0) {
+          throw new IllegalStateException("label not visited");
+        }
+        int offset = label.position - instruction;
+        if(((Boolean)fixup[3]).booleanValue()) {
+          bytes[at++] = (byte)(offset >>> 24);
+          bytes[at++] = (byte)(offset >>> 16);
+        }
+        else if(offset > Short.MAX_VALUE || offset < Short.MIN_VALUE) {
+          throw new IllegalStateException("method too large");
+        }
+        bytes[at++] = (byte)(offset >>> 8);
+        bytes[at] = (byte)offset;
+      }
+      bytecode = bytes;
+    }
+    void prepare() {
+      if(bytecode != null) {
+        pool.newUtf8("Code");
+      }
+      if(exceptions.length > 0) {
+        pool.newUtf8("Exceptions");
+      }
+    }
+    void writeTo(ByteArrayOutputStream out) {
+      writeShort(out, access);
+      writeShort(out, name);
+      writeShort(out, descriptor);
+      int attributes = (bytecode==null?0:1) + (exceptions.length>0?1:0);
+      writeShort(out, attributes);
+      if(bytecode != null) {
+        writeShort(out, pool.newUtf8("Code"));
+        writeInt(out, 12 + bytecode.length);
+        writeShort(out, maxStack);
+        writeShort(out, maxLocals);
+        writeInt(out, bytecode.length);
+        out.write(bytecode, 0, bytecode.length);
+        //no exception table and no attribute.
+        writeShort(out, 0);
+        writeShort(out, 0);
+      }
+      if(exceptions.length > 0) {
+        writeShort(out, pool.newUtf8("Exceptions"));
+        writeInt(out, 2 + 2*exceptions.length);
+        writeShort(out, exceptions.length);
+        for(int exception : exceptions) {
+          writeShort(out, exception);
+        }
+      }
+    }
+  }
+}
@@ -17,7 +17,6 @@
 package org.codehaus.dimple;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -29,12 +28,23 @@ class TypingUtils {
     String toString();
   }
 
+  private static final ClassValue<Class<?>[]> allInterfaces = new ClassValue<Class<?>[]>() {
+    protected Class<?>[] computeValue(Class<?> cls) {
+      return computeAllInterfaces(cls);
+    }
+  };
+
   /**
    * To get all interfaces implemented by a class.
+   * The array is computed once per class, and must not be modified.
    * @param cls the class.
    * @return the interfaces.
    */
   static Class<?>[] getAllInterfaces(Class<?> cls) {
+    return allInterfaces.get(cls);
+  }
+
+  private static Class<?>[] computeAllInterfaces(Class<?> cls) {
     final HashSet<Class> ret = new HashSet<Class>();
     for(;cls!=null && !Object.class.equals(cls); cls=cls.getSuperclass()){
       ret.addAll(Arrays.asList(cls.getInterfaces()));
@@ -42,9 +52,44 @@ class TypingUtils {
     return (Class<?>[]) ret.toArray(new Class<?>[ret.size()]);
   }
 
+  /**
+   * To get the package name of a class without relying on {@link Class#getPackage()}.
+   * @param type the class.
+   * @return the package name, or empty string for the default package.
+   */
+  static String getPackageName(Class<?> type) {
+    final String name = type.getName();
+    final int dot = name.lastIndexOf('.');
+    return dot<0?"":name.substring(0, dot);
+  }
+
+  /**
+   * Classes in java.* and javax.* packages. We cannot define classes in these packages.
+   */
+  static boolean isSystemClass(Class<?> type) {
+    final String packageName = getPackageName(type);
+    return packageName.startsWith("java.") || packageName.startsWith("javax.");
+  }
+
+  /*
+   * Memoized so that diamond-shaped hierarchies are visited once per class, not once per path.
+   * The depths only refer to boot classes, so they can be attached to any class
+   * without keeping a class loader alive.
+   */
+  private static final ClassValue<Integer> hierarchyDepths = new ClassValue<Integer>() {
+    protected Integer computeValue(Class<?> c) {
+      return Integer.valueOf(computeHierarchyDepth(c));
+    }
+  };
+
   static int getHierarchyDepth(Class c){
+    if(c==null) return 0;
+    return hierarchyDepths.get(c).intValue();
+  }
+
+  private static int computeHierarchyDepth(Class<?> c){
     int depth = 0;
-    if(c==null || Object.class.equals(c)){
+    if(Object.class.equals(c)){
       return depth;
     }
     int superDepth = 1+getHierarchyDepth(c.getSuperclass());
@@ -84,15 +129,13 @@ class TypingUtils {
     return true;
   }
 
-  static void checkImplementingMethods(Method implementingMethod, Class[] implementingParams, Method[] implemented, Class<?>[][] parameterTypesArray) {
+  static void checkImplementingMethods(Method implementingMethod, Class[] implementingParams, SignatureIndex[] implemented) {
     if(Object.class.equals(implementingMethod.getDeclaringClass())) return;
     String name = implementingMethod.getName();
-    Class returnType = implementingMethod.getReturnType();
-    for(int i=0; i<implemented.length; i++) {
-      Method mtd = implemented[i];
-      Class<?>[] implementedParams = parameterTypesArray[i];
-      if(name.equals(mtd.getName()) && isParamsCompatible(implementingParams, implementedParams)){
-        if(!isReturnTypeCompatible(returnType, mtd.getReturnType())) {
+    for(SignatureIndex index : implemented) {
+      Method mtd = index.findImplemented(name, implementingParams);
+      if(mtd != null){
+        if(!isReturnTypeCompatible(implementingMethod.getReturnType(), mtd.getReturnType())) {
           throw new InvalidReturnTypeException(mtd, implementingMethod);
         }
         return;
@@ -101,34 +144,12 @@ class TypingUtils {
     throw new UnusedMethodException(implementingMethod);
   }
 
-  private static void checkImplementingMethods(Method implementing, Method[] implemented, Class<?>[][] parameterTypesArray){
-    checkImplementingMethods(implementing, implementing.getParameterTypes(), 
-        implemented, parameterTypesArray);
-  }
-
-  static void checkImplementingMethods(Method[] implementing, Method[] implemented)
+  static void checkImplementingMethods(Method[] implementing, Class<?>[] asTypes)
   throws InvalidReturnTypeException, UnusedMethodException {
-    final Class<?>[][] paramTypesArray = TypingUtils.getParameterTypesArray(implemented);
+    final SignatureIndex[] implemented = SignatureIndex.getIndexes(asTypes);
     for(Method mtd : implementing) {
-      checkImplementingMethods(mtd, implemented, paramTypesArray);
-    }
-  }
-
-  static Class<?>[][] getParameterTypesArray(Method[] implemented) {
-    final Class<?>[][] paramTypesArray = new Class<?>[implemented.length][];
-    for(int i=0; i<implemented.length; i++){
-      paramTypesArray[i] = implemented[i].getParameterTypes();
-    }
-    return paramTypesArray;
-  }
-
-  static Method[] getAllMethodsToImplement(Class<?>[] asTypes) {
-    ArrayList<Method> allmethods = new ArrayList<Method>();
-    for(Class<?> asType : asTypes) {
-      allmethods.addAll(Arrays.asList(asType.getMethods()));
+      checkImplementingMethods(mtd, mtd.getParameterTypes(), implemented);
     }
-    allmethods.addAll(objectMethodsSignatures);
-    return (Method[]) allmethods.toArray(new Method[allmethods.size()]);
   }
 
   static final List<Method> objectMethodsSignatures = 
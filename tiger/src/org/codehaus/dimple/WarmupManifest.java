@@ -0,0 +1,175 @@
+package org.codehaus.dimple;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Records the types resolved by {@link Implementor} in a run,
+ * so that a later run can resolve them up front.
+ * <p>
+ * Recording is enabled by system property {@code dimple.manifest.record},
+ * naming the manifest file. Each line of the manifest is
+ * <pre>kind implClass type</pre>
+ * where kind is one of {@value #IMPLEMENT}, {@value #INTERCEPT} or {@value #OVERRIDE}.
+ * For {@value #OVERRIDE}, type is the class of the overridden object.
+ * A line is appended the first time its types are resolved,
+ * so the manifest is complete even if the run never ends normally.
+ * @author benyu
+ */
+final class WarmupManifest {
+  static final String IMPLEMENT = "implement";
+  static final String INTERCEPT = "intercept";
+  static final String OVERRIDE = "override";
+  private static final WarmupManifest recorder = getRecorder();
+  private static WarmupManifest getRecorder() {
+    final String file = System.getProperty("dimple.manifest.record");
+    return file==null?null:new WarmupManifest(Paths.get(file));
+  }
+  /**
+   * Record the types if recording is enabled.
+   * @param kind how the types are resolved.
+   * @param implClass the impl class.
+   * @param type the implemented or intercepted type, or the class of the overridden object.
+   */
+  static void record(String kind, Class<?> implClass, Class<?> type) {
+    if(recorder != null) {
+      recorder.add(kind, implClass, type);
+    }
+  }
+  private final Path file;
+  private final ConcurrentMap<String, Boolean> recorded = new ConcurrentHashMap<String, Boolean>();
+  /**
+   * Lines already in the file are not recorded again.
+   * @param file the manifest file.
+   */
+  WarmupManifest(Path file) {
+    this.file = file;
+    try {
+      for(String line : readLines(file)) {
+        recorded.put(line, Boolean.TRUE);
+      }
+    }
+    catch(IOException e) {
+      //start a new manifest.
+    }
+  }
+  void add(String kind, Class<?> implClass, Class<?> type) {
+    final String line = kind + ' ' + implClass.getName() + ' ' + type.getName();
+    if(recorded.putIfAbsent(line, Boolean.TRUE) != null) return;
+    try {
+      synchronized(this) {
+        Files.write(file, (line+'\n').getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+    }
+    catch(IOException e) {
+      //recording never fails the application; try again next time.
+      recorded.remove(line);
+    }
+  }
+  private static List<String> readLines(Path file) throws IOException {
+    final List<String> lines = new ArrayList<String>();
+    if(!Files.exists(file)) return lines;
+    for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if(line.length() > 0 && !line.startsWith("#")) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+  /**
+   * Resolve the types listed in a manifest with tasks of the common {@link ForkJoinPool}.
+   * @param manifest the manifest file.
+   * @param loader the class loader to load the listed classes.
+   * @return the task that completes when all listed types are resolved.
+   */
+  static ForkJoinTask<?> preload(Path manifest, final ClassLoader loader) throws IOException {
+    final List<String> lines = readLines(manifest);
+    return ForkJoinPool.commonPool().submit(new RecursiveAction() {
+      private static final long serialVersionUID = 1L;
+      protected void compute() {
+        final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(lines.size());
+        for(final String line : lines) {
+          tasks.add(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+            protected void compute() {
+              preload(line, loader);
+            }
+          }.fork());
+        }
+        for(ForkJoinTask<?> task : tasks) {
+          task.quietlyJoin();
+        }
+        for(ForkJoinTask<?> task : tasks) {
+          task.join();
+        }
+      }
+    });
+  }
+  /*
+   * Creating a proxy instance defines and caches the proxy class.
+   */
+  private static final InvocationHandler UNUSED_HANDLER = new InvocationHandler() {
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      throw new UnsupportedOperationException();
+    }
+  };
+  static void preload(String line, ClassLoader loader) {
+    final String[] words = line.split("\\s+");
+    if(words.length != 3) {
+      throw new IllegalArgumentException("invalid manifest line: " + line);
+    }
+    final Class<?> implClass;
+    final Class<?> type;
+    try {
+      implClass = Class.forName(words[1], false, loader);
+      type = Class.forName(words[2], false, loader);
+    }
+    catch(ClassNotFoundException e) {
+      //the class is gone since the manifest was recorded.
+      return;
+    }
+    final Implementor<?> implementor = Implementor.getCachedInstance(implClass);
+    if(INTERCEPT.equals(words[0])) {
+      implementor.generateInterceptor(type);
+    }
+    else if(IMPLEMENT.equals(words[0])) {
+      implementor.checkImplementingMethods(type);
+      resolveBindings(implementor, type);
+      if(type.isInterface()) {
+        Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, UNUSED_HANDLER);
+      }
+    }
+    else if(OVERRIDE.equals(words[0])) {
+      final Class<?>[] itfs = TypingUtils.getAllInterfaces(type);
+      implementor.checkImplementingMethods(itfs);
+      for(Class<?> itf : itfs) {
+        resolveBindings(implementor, itf);
+      }
+      Proxy.newProxyInstance(type.getClassLoader(), itfs, UNUSED_HANDLER);
+    }
+    else {
+      throw new IllegalArgumentException("invalid manifest line: " + line);
+    }
+  }
+  private static void resolveBindings(Implementor<?> implementor, Class<?> type) {
+    for(Method mtd : SignatureIndex.getIndex(type).getMethods()) {
+      implementor.getBinding(mtd);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/* Generated by org.codehaus.dimple.ImplementProcessor from org.codehaus.dimple.PrecompiledInterceptorTest.Polite. Do not edit. */
+package org.codehaus.dimple;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public final class PrecompiledInterceptorTest_Polite$$DimpleInterceptor$$org_codehaus_dimple_PrecompiledInterceptorTest_Greeter implements org.codehaus.dimple.PrecompiledInterceptorTest.Greeter, org.codehaus.dimple.InternalDimpleInterceptor {
+  private final org.codehaus.dimple.PrecompiledInterceptorTest.Greeter interceptee;
+  private final org.codehaus.dimple.PrecompiledInterceptorTest.Polite overrider;
+  public PrecompiledInterceptorTest_Polite$$DimpleInterceptor$$org_codehaus_dimple_PrecompiledInterceptorTest_Greeter(Object interceptee, Object overrider) {
+    this.interceptee = (org.codehaus.dimple.PrecompiledInterceptorTest.Greeter)interceptee;
+    this.overrider = (org.codehaus.dimple.PrecompiledInterceptorTest.Polite)overrider;
+  }
+  public Object newDimpleInterceptor(Object interceptee, Object overrider) {
+    return new PrecompiledInterceptorTest_Polite$$DimpleInterceptor$$org_codehaus_dimple_PrecompiledInterceptorTest_Greeter(interceptee, overrider);
+  }
+  public java.lang.String greet(java.lang.String a0) {
+    return overrider.greet(a0);
+  }
+  public int count(int a0) {
+    if(interceptee == null) {
+      throw new UnsupportedOperationException("public abstract int org.codehaus.dimple.PrecompiledInterceptorTest$Greeter.count(int)");
+    }
+    return interceptee.count(a0);
+  }
+  public void reset() throws java.io.IOException {
+    if(interceptee == null) {
+      throw new UnsupportedOperationException("public abstract void org.codehaus.dimple.PrecompiledInterceptorTest$Greeter.reset() throws java.io.IOException");
+    }
+    interceptee.reset();
+  }
+  public java.lang.String hello() {
+    if(interceptee == null) {
+      return org.codehaus.dimple.PrecompiledInterceptorTest.Greeter.super.hello();
+    }
+    return interceptee.hello();
+  }
+}
@@ -129,6 +129,25 @@ public class AnnotationTestCase extends AbstractTestCase {
   throws Exception {
     verifyBadReturnType(new SubBadReturnType());
   }
+  public void testFailedCheckIsRepeated()
+  throws Exception {
+    Implementor<BadReturnType> implementor = Implementor.instance(BadReturnType.class);
+    for(int i=0; i<2; i++) {
+      try{
+        implementor.checkImplementingMethods(I2.class);
+        fail("should have failed");
+      }
+      catch(InvalidReturnTypeException e){
+        verifyError(e);
+      }
+    }
+  }
+  public void testCheckedTypeIsImplementedAgain(){
+    Implementor<My4> implementor = Implementor.instance(My4.class);
+    My4 m4 = new My4();
+    assertEquals("my1", implementor.implement(I1.class, m4).f());
+    assertEquals("my1", implementor.implement(I1.class, m4).f());
+  }
   private void verifyBadReturnType(Object badReturnTypeObj) throws NoSuchMethodException {
 
     try{
@@ -0,0 +1,131 @@
+package org.codehaus.dimple;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class BytecodeCacheTest {
+  public interface Shout {
+    String shout(String s);
+    int size();
+  }
+  public static class Loud implements Shout {
+    public String shout(String s) {
+      return s.toUpperCase();
+    }
+    public int size() {
+      return 1;
+    }
+  }
+  public static class Louder {
+    public String shout(String s) {
+      return s.toUpperCase()+"!!";
+    }
+  }
+  private static final InterceptorGenerator.MethodMapping BY_NAME =
+    new InterceptorGenerator.MethodMapping() {
+    public Method getOverrrider(Method method) {
+      try {
+        return Louder.class.getMethod(method.getName(), method.getParameterTypes());
+      }
+      catch(NoSuchMethodException e) {
+        return null;
+      }
+    }
+  };
+  private static final ClassLoader LOADER = BytecodeCacheTest.class.getClassLoader();
+  private String cacheDir;
+  private File dir;
+  @Before public void enableCache() throws Exception {
+    cacheDir = System.getProperty("dimple.cache.dir");
+    dir = File.createTempFile("dimple", "cache");
+    dir.delete();
+    System.setProperty("dimple.cache.dir", dir.getPath());
+  }
+  @After public void restore() {
+    if(cacheDir == null) {
+      System.clearProperty("dimple.cache.dir");
+    }
+    else {
+      System.setProperty("dimple.cache.dir", cacheDir);
+    }
+    delete(dir);
+  }
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if(children != null) {
+      for(File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+  private File getCachedFile(Class<?> c) {
+    return new File(dir, getDefinedName(c).replace('.', File.separatorChar)+".class");
+  }
+  /*
+   * hidden classes have a suffix after the name they are defined with.
+   */
+  private static String getDefinedName(Class<?> c) {
+    String name = c.getName();
+    int suffix = name.indexOf('/');
+    return suffix<0?name:name.substring(0, suffix);
+  }
+  @Test public void testGeneratedClassIsCachedAndReused() {
+    if(InterceptorGenerator.isIndy()) return;
+    Interceptor<Shout, Louder> interceptor =
+      InterceptorGenerator.generateInterceptor(Shout.class, Louder.class, BY_NAME);
+    Shout shout = interceptor.intercept(new Loud(), new Louder());
+    assertEquals("HI!!", shout.shout("hi"));
+    File cached = getCachedFile(shout.getClass());
+    assertTrue(cached.isFile());
+    assertTrue(cached.setLastModified(1000));
+    Shout again = InterceptorGenerator.generateInterceptor(Shout.class, Louder.class, BY_NAME)
+      .intercept(new Loud(), new Louder());
+    assertEquals(getDefinedName(shout.getClass()), getDefinedName(again.getClass()));
+    assertEquals("HO!!", again.shout("ho"));
+    assertEquals(1, again.size());
+    assertEquals(1000, cached.lastModified());
+  }
+  @Test public void testReusableClassIsCached() {
+    if(InterceptorGenerator.isIndy()) return;
+    Shout shout = InterceptorGenerator.generateInterceptor(Shout.class, Louder.class, BY_NAME)
+      .newReusable().rebind(new Loud(), new Louder());
+    assertEquals("HI!!", shout.shout("hi"));
+    assertTrue(getCachedFile(shout.getClass()).isFile());
+  }
+  @Test public void testTamperedClassIsGeneratedAgain() throws Exception {
+    if(InterceptorGenerator.isIndy()) return;
+    Shout shout = InterceptorGenerator.generateInterceptor(Shout.class, Louder.class, BY_NAME)
+      .intercept(new Loud(), new Louder());
+    File cached = getCachedFile(shout.getClass());
+    byte[] bytecode = Files.readAllBytes(cached.toPath());
+    assertTrue(new File(cached.getPath()+".sha256").isFile());
+    Files.write(cached.toPath(), new byte[]{1, 2, 3});
+    Shout again = InterceptorGenerator.generateInterceptor(Shout.class, Louder.class, BY_NAME)
+      .intercept(new Loud(), new Louder());
+    assertEquals("HO!!", again.shout("ho"));
+    assertTrue(Arrays.equals(bytecode, Files.readAllBytes(cached.toPath())));
+  }
+  @Test public void testVersionDependsOnGenerators() {
+    assertTrue(BytecodeCache.getVersion().matches(".+:[0-9a-f]{16}"));
+  }
+  @Test public void testHashDependsOnSignatures() {
+    assertEquals(BytecodeCache.hash("interceptor", LOADER, Shout.class, Louder.class),
+        BytecodeCache.hash("interceptor", LOADER, Shout.class, Louder.class));
+    assertFalse(BytecodeCache.hash("interceptor", LOADER, Shout.class, Louder.class)
+        .equals(BytecodeCache.hash("interceptor", LOADER, Shout.class, Loud.class)));
+    assertFalse(BytecodeCache.hash("interceptor", LOADER, Shout.class, Louder.class)
+        .equals(BytecodeCache.hash("reusable", LOADER, Shout.class, Louder.class)));
+    assertFalse(BytecodeCache.hash("interceptor", LOADER, Shout.class, Louder.class)
+        .equals(BytecodeCache.hash("interceptor", new ClassLoader(LOADER){}, 
+            Shout.class, Louder.class)));
+  }
+}
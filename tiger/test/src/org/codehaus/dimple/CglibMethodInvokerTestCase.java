@@ -0,0 +1,68 @@
+package org.codehaus.dimple;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+public class CglibMethodInvokerTestCase extends AbstractTestCase {
+  private static class Calculator {
+    public long add(int a, long b) {
+      return a+b;
+    }
+    public char[] chars(String s, boolean reverse) {
+      return reverse?new StringBuffer(s).reverse().toString().toCharArray():s.toCharArray();
+    }
+    public void fail(String msg) throws IOException {
+      throw new IOException(msg);
+    }
+    public static String twice(String s) {
+      return s+s;
+    }
+  }
+  private static MethodInvoker generated(Class<?> owner, String name, Class<?>... paramTypes)
+  throws Exception {
+    Method mtd = owner.getMethod(name, paramTypes);
+    MethodInvoker invoker = MethodInvokers.generated(owner, mtd);
+    assertTrue(invoker instanceof MethodInvokers.GeneratedMethodInvoker);
+    return invoker;
+  }
+  public void testPrimitivesAreBoxed() throws Throwable {
+    MethodInvoker invoker = generated(Calculator.class, "add", int.class, long.class);
+    assertEquals(Long.valueOf(3), invoker.invoke(new Calculator(), new Object[]{1, 2L}));
+  }
+  public void testArrays() throws Throwable {
+    MethodInvoker invoker = generated(Calculator.class, "chars", String.class, boolean.class);
+    char[] result = (char[])invoker.invoke(new Calculator(), new Object[]{"ab", true});
+    assertEquals("ba", new String(result));
+  }
+  public void testExceptionNotWrapped() throws Throwable {
+    MethodInvoker invoker = generated(Calculator.class, "fail", String.class);
+    try {
+      invoker.invoke(new Calculator(), new Object[]{"bad"});
+      fail("IOException expected");
+    }
+    catch(IOException e) {
+      assertEquals("bad", e.getMessage());
+    }
+  }
+  public void testStaticMethod() throws Throwable {
+    MethodInvoker invoker = generated(Calculator.class, "twice", String.class);
+    assertEquals("xx", invoker.invoke(null, new Object[]{"x"}));
+  }
+  public void testSystemInterface() throws Throwable {
+    MethodInvoker invoker = generated(List.class, "size");
+    assertEquals(Integer.valueOf(2), invoker.invoke(Arrays.asList("a", "b"), null));
+  }
+  public void testProxyUsesGeneratedInvoker() {
+    Runnable original = new Runnable() {
+      public void run() {}
+      public String toString() {
+        return "original";
+      }
+    };
+    Runnable proxy = Implementor.proxy(Runnable.class, new Calculator(), original);
+    assertEquals("original", proxy.toString());
+    proxy.run();
+  }
+}
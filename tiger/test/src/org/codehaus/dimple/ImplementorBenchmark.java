@@ -0,0 +1,70 @@
+package org.codehaus.dimple;
+
+import javax.swing.JTable;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+public class ImplementorBenchmark {
+  /*
+   * Each level extends the level below through two paths.
+   */
+  public interface Level0 {}
+  public interface Left1 extends Level0 {}
+  public interface Right1 extends Level0 {}
+  public interface Level1 extends Left1, Right1 {}
+  public interface Left2 extends Level1 {}
+  public interface Right2 extends Level1 {}
+  public interface Level2 extends Left2, Right2 {}
+  public interface Left3 extends Level2 {}
+  public interface Right3 extends Level2 {}
+  public interface Level3 extends Left3, Right3 {}
+  public interface Left4 extends Level3 {}
+  public interface Right4 extends Level3 {}
+  public interface Level4 extends Left4, Right4 {}
+  public interface Left5 extends Level4 {}
+  public interface Right5 extends Level4 {}
+  public interface Level5 extends Left5, Right5 {}
+  public interface Left6 extends Level5 {}
+  public interface Right6 extends Level5 {}
+  public interface Level6 extends Left6, Right6 {}
+  public interface Left7 extends Level6 {}
+  public interface Right7 extends Level6 {}
+  public interface Level7 extends Left7, Right7 {}
+  public interface Left8 extends Level7 {}
+  public interface Right8 extends Level7 {}
+  public interface Level8 extends Left8, Right8 {}
+  public static class Facade {
+    public void f(Level8 a) {}
+    public void f(Level8 a, Level8 b) {}
+    public void f(Level8 a, Level8 b, Level8 c) {}
+    public void g(Level7 a) {}
+    public void g(Level7 a, Level8 b) {}
+    public void h(Level6 a, Level7 b, Level8 c) {}
+  }
+  private int times = 1000;
+  @Test public void testDiamondParameterTypes() {
+    assertEquals(17, TypingUtils.getHierarchyDepth(Level8.class));
+    runBenchmark(Facade.class, "implementor of diamond parameter types");
+  }
+  @Test public void testHundredsOfMethods() {
+    assertTrue(JTable.class.getMethods().length > 300);
+    runBenchmark(JTable.class, "implementor of " + JTable.class.getMethods().length + " methods");
+  }
+  @Test public void testValidatingWideFacade() {
+    Implementor.willImplement(JTable.class, JTable.class);
+    long instant = System.currentTimeMillis();
+    for(int i=0; i<times; i++) {
+      Implementor.willImplement(JTable.class, JTable.class);
+    }
+    System.out.println("validating "+JTable.class.getMethods().length+" methods: "
+        +(System.currentTimeMillis()-instant));
+  }
+  private void runBenchmark(Class<?> implClass, String title) {
+    Implementor.instance(implClass);
+    long instant = System.currentTimeMillis();
+    for(int i=0; i<times; i++) {
+      Implementor.instance(implClass);
+    }
+    System.out.println(title+": "+(System.currentTimeMillis()-instant));
+  }
+}
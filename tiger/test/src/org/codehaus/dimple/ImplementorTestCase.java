@@ -24,6 +24,12 @@ public class ImplementorTestCase extends AbstractTestCase {
     Implementor<ImplementorTestCase> cloned = assertSerializable(implementor);
     assertEquals(implementor, cloned);
   }
+  public void testCachedInstance(){
+    Implementor<Test1> implementor = Implementor.getCachedInstance(Test1.class);
+    assertSame(implementor, Implementor.getCachedInstance(Test1.class));
+    assertEquals(Implementor.instance(Test1.class), implementor);
+    assertNotSame(implementor, Implementor.getCachedInstance(Test2.class));
+  }
   public void testImplementorHashable(){
     assertHashable(Implementor.instance(ImplementorTestCase.class));
   }
@@ -147,6 +153,45 @@ public class ImplementorTestCase extends AbstractTestCase {
     assertEquals(11, test.getAge());
     assertEquals("10", test.getName("x", new Integer(1)));
   }
+  public void testMethodBindingResolvedOnce()
+  throws Exception {
+    Implementor<Test2> implementor = Implementor.instance(Test2.class);
+    Method getName = TestInterface.class.getMethod("getName", String.class, Number.class);
+    MethodBinding binding = implementor.getBinding(getName);
+    assertSame(binding, implementor.getBinding(getName));
+    assertEquals(Test2.class, binding.getImplementing().getDeclaringClass());
+    assertFalse(binding.isDefault(true));
+    Method hashCode = Object.class.getMethod("hashCode");
+    assertTrue(implementor.getBinding(hashCode).isDefault(true));
+    assertFalse(implementor.getBinding(hashCode).isDefault(false));
+    assertTrue(Implementor.instance(Object.class).getBinding(getName).isDefault(false));
+    assertEquals(implementor, assertSerializable(implementor));
+  }
+  public void testDispatchStrategies(){
+    for(DispatchStrategy strategy : DispatchStrategy.values()) {
+      Implementor<Test2> implementor = Implementor.instance(Test2.class, strategy);
+      assertSame(strategy, implementor.getDispatchStrategy());
+      final TestInterface defaultTest = implementor.implement(TestInterface.class, new Test2());
+      assertTest2(defaultTest);
+      TestInterface test = Implementor.instance(Test3.class, strategy)
+        .implement(TestInterface.class, new Test3(), defaultTest);
+      assertTest2(test);
+      assertEquals(defaultTest.hashCode(), test.hashCode());
+      assertEquals(defaultTest.toString(), test.toString());
+    }
+  }
+  public void testMethodHandleDispatch()
+  throws Throwable {
+    Method getAge = Test1.class.getMethod("getAge");
+    MethodInvoker invoker = MethodInvokers.methodHandle(getAge);
+    assertTrue(invoker instanceof MethodInvokers.MethodHandleInvoker);
+    Test1 test = new Test1();
+    test.setAge(3);
+    assertEquals(Integer.valueOf(3), invoker.invoke(test, null));
+    invoker = MethodInvokers.methodHandle(Test1.class.getMethod("setAge", int.class));
+    assertNull(invoker.invoke(test, new Object[]{4}));
+    assertEquals(4, test.getAge());
+  }
   public void testDefaultObjectMethodsUsed(){
     final TestInterface test = Implementor.instance(Test1.class)
       .implement(TestInterface.class, new Test1());
@@ -227,6 +272,43 @@ public class ImplementorTestCase extends AbstractTestCase {
     I3 i3 = (I3)proxy;
     assertEquals("h", i3.h());
   }
+  public void testGeneratedOverride(){
+    Object orig = new B(){
+      public String h(){return "h";}
+      public String toString(){return "orig";}
+    };
+    Object overrider = new Object(){
+      @SuppressWarnings("unused")
+      public String f(){
+        return "f'";
+      }
+    };
+    Object overriding = Implementor.generateOverrideObject(orig, overrider);
+    assertFalse(java.lang.reflect.Proxy.isProxyClass(overriding.getClass()));
+    assertEquals("f'", ((I1)overriding).f());
+    assertEquals("g", ((I2)overriding).g());
+    assertEquals("h", ((I3)overriding).h());
+    assertEquals("orig", overriding.toString());
+    assertEquals(orig.hashCode(), overriding.hashCode());
+    assertSame(overriding.getClass(), 
+        Implementor.generateOverrideObject(orig, overrider).getClass());
+  }
+  public void testGeneratedOverrideOfSystemClass(){
+    java.util.List<String> list = new java.util.ArrayList<String>();
+    list.add("a");
+    Object overriding = Implementor.generateOverrideObject(list, new Object(){
+      @SuppressWarnings("unused")
+      public int size(){
+        return 10;
+      }
+    });
+    assertFalse(java.lang.reflect.Proxy.isProxyClass(overriding.getClass()));
+    java.util.List<?> overridingList = (java.util.List<?>)overriding;
+    assertEquals(10, overridingList.size());
+    assertEquals("a", overridingList.get(0));
+    assertTrue(overriding instanceof java.util.RandomAccess);
+    assertEquals(list, overriding);
+  }
   public class ImplWithExtraMethod {
     public String f(){
       return "my6";
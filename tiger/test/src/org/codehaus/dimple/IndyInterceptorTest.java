@@ -0,0 +1,81 @@
+package org.codehaus.dimple;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class IndyInterceptorTest {
+  public interface Greeter {
+    String greet(String name);
+    int count(int base);
+    long total(long a, double b);
+  }
+  public static class Hello implements Greeter {
+    public String greet(String name) {
+      return "hello " + name;
+    }
+    public int count(int base) {
+      return base;
+    }
+    public long total(long a, double b) {
+      return a + (long)b;
+    }
+  }
+  public static class Hi {
+    public String greet(String name) {
+      return "hi " + name;
+    }
+    public static long total(long a, double b) {
+      return a * (long)b;
+    }
+  }
+  private String codegen;
+  @Before public void enableIndy() {
+    codegen = System.getProperty("dimple.codegen");
+    System.setProperty("dimple.codegen", "indy");
+  }
+  @After public void restore() {
+    if(codegen == null) {
+      System.clearProperty("dimple.codegen");
+    }
+    else {
+      System.setProperty("dimple.codegen", codegen);
+    }
+  }
+  @Test public void testInterceptThroughCallSites() {
+    Interceptor<Greeter, Hi> interceptor = 
+      Implementor.generateInterceptor(Greeter.class, Hi.class);
+    Greeter greeter = interceptor.intercept(new Hello(), new Hi());
+    assertEquals("hi tom", greeter.greet("tom"));
+    assertEquals(3, greeter.count(3));
+    assertEquals(6L, greeter.total(2, 3));
+    assertNotNull(IndyLinkage.getLinkage(greeter.getClass()));
+    try {
+      interceptor.stub(new Hi()).count(1);
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  @Test public void testRelinkWithoutRegeneration() throws Exception {
+    Interceptor<Greeter, Hello> interceptor = 
+      Implementor.generateInterceptor(Greeter.class, Hello.class);
+    Greeter greeter = interceptor.stub(new Hello());
+    assertEquals("hello tom", greeter.greet("tom"));
+    IndyLinkage linkage = IndyLinkage.getLinkage(greeter.getClass());
+    MethodHandle hi = MethodHandles.lookup()
+      .unreflect(Hi.class.getMethod("greet", String.class)).bindTo(new Hi());
+    //the receiver is the overrider, an instance of Hello.
+    linkage.relink(Greeter.class.getMethod("greet", String.class), 
+        MethodHandles.dropArguments(hi, 0, Hello.class));
+    Hello hello = new Hello();
+    assertEquals("hi tom", interceptor.stub(hello).greet("tom"));
+    assertSame(greeter.getClass(), interceptor.stub(hello).getClass());
+    linkage.relink();
+    assertEquals("hello tom", greeter.greet("tom"));
+  }
+}
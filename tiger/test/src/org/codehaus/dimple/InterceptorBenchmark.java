@@ -48,6 +48,34 @@ public class InterceptorBenchmark {
     String title = "proxy override";
     runBenchmark(mycall, title);
   }
+  @Test public void testProxyOverrideByDispatchStrategy() {
+    for(DispatchStrategy strategy : DispatchStrategy.values()) {
+      Call mycall = Implementor.instance(Impl.class, strategy).implement(Call.class, new Impl(), call);
+      verifyOverride("test", mycall);
+      runBenchmark(mycall, "proxy override ("+strategy+")");
+    }
+  }
+  @Test public void testInterceptorWrapping() {
+    Interceptor<Call, Impl> interceptor = Implementor.generateInterceptor(Call.class, Impl.class);
+    Impl impl = new Impl();
+    verifyOverride("test", interceptor.intercept(call, impl));
+    long instant = System.currentTimeMillis();
+    for(int i=0; i<times; i++) {
+      interceptor.intercept(call, impl);
+    }
+    System.out.println("interceptor wrapping: "+(System.currentTimeMillis()-instant));
+  }
+  @Test public void testReusableInterceptorWrapping() {
+    ReusableInterceptor<Call, Impl> reusable = 
+      Implementor.generateInterceptor(Call.class, Impl.class).newReusable();
+    Impl impl = new Impl();
+    verifyOverride("test", reusable.rebind(call, impl));
+    long instant = System.currentTimeMillis();
+    for(int i=0; i<times; i++) {
+      reusable.rebind(call, impl).f(1);
+    }
+    System.out.println("reusable interceptor wrapping: "+(System.currentTimeMillis()-instant));
+  }
   private void verifyDelegate(String msg, Call mycall) {
     assertEquals(1, mycall.f(1));
     assertSame(msg, mycall.f(msg));
@@ -0,0 +1,188 @@
+package org.codehaus.dimple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class InterceptorCacheTest {
+  public interface Call {
+    String call(String s);
+  }
+  public static class Impl {
+    public String call(String s) {
+      return s+"!";
+    }
+  }
+  @Test public void testHostClass() {
+    assertSame(Impl.class, InterceptorCache.getHostClass(Connection.class, Impl.class));
+    assertSame(Call.class, InterceptorCache.getHostClass(Call.class, Object.class));
+    assertSame(Impl.class, InterceptorCache.getHostClass(Call.class, Impl.class));
+  }
+  @Test public void testInterceptorSurvivesGarbageCollection() {
+    Interceptor<Call, Impl> interceptor = Implementor.generateInterceptor(Call.class, Impl.class);
+    System.gc();
+    assertSame(interceptor, Implementor.generateInterceptor(Call.class, Impl.class));
+  }
+  public interface Echo {
+    String echo(String s);
+  }
+  public static class Loud {
+    public String call(String s) {
+      return s.toUpperCase();
+    }
+    public String echo(String s) {
+      return s+s;
+    }
+  }
+  @Test public void testGenerateInterceptors() {
+    Map<Class<?>, Collection<Class<?>>> pairs = new LinkedHashMap<Class<?>, Collection<Class<?>>>();
+    pairs.put(Impl.class, Arrays.<Class<?>>asList(Call.class));
+    pairs.put(Loud.class, Arrays.<Class<?>>asList(Call.class, Echo.class, Runnable.class));
+    List<Interceptor<?, ?>> interceptors = Implementor.generateInterceptors(pairs);
+    assertEquals(4, interceptors.size());
+    assertSame(interceptors.get(0), Implementor.generateInterceptor(Call.class, Impl.class));
+    assertSame(interceptors.get(1), Implementor.generateInterceptor(Call.class, Loud.class));
+    assertSame(interceptors.get(2), Implementor.generateInterceptor(Echo.class, Loud.class));
+    assertEquals("HI", Implementor.generateInterceptor(Call.class, Loud.class)
+        .stub(new Loud()).call("hi"));
+    assertEquals("hihi", Implementor.generateInterceptor(Echo.class, Loud.class)
+        .stub(new Loud()).echo("hi"));
+  }
+  @Test public void testGenerateInterceptorsThrowsFirstFailure() {
+    Map<Class<?>, Collection<Class<?>>> pairs = new LinkedHashMap<Class<?>, Collection<Class<?>>>();
+    pairs.put(Impl.class, Arrays.<Class<?>>asList(Call.class, String.class));
+    try {
+      Implementor.generateInterceptors(pairs);
+      fail("IllegalArgumentException expected");
+    }
+    catch(IllegalArgumentException e) {
+      assertTrue(e.getMessage().indexOf(String.class.getName()) >= 0);
+    }
+  }
+  @Test public void testInterceptorReleasedWithClassLoader() throws Exception {
+    IsolatingClassLoader loader = new IsolatingClassLoader(Impl.class.getName());
+    WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+    Class<?> implClass = loader.loadClass(Impl.class.getName());
+    assertNotSame(Impl.class, implClass);
+    Call call = Implementor.intercept(Call.class, null, 
+        implClass.getConstructor().newInstance());
+    assertEquals("hi!", call.call("hi"));
+    loader = null;
+    implClass = null;
+    call = null;
+    for(int i=0; i<10 && ref.get()!=null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(ref.get());
+  }
+  @Test public void testInterceptorOfSystemClassesReleasedWithDimple() throws Exception {
+    assertDimpleReleased("generateInterceptor", new Class<?>[]{Class.class, Class.class}, 
+        List.class, ArrayList.class);
+  }
+  @Test public void testBindingsReleasedWithClassLoader() throws Exception {
+    IsolatingClassLoader loader = new IsolatingClassLoader(Call.class.getName());
+    WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+    Class<?> callType = loader.loadClass(Call.class.getName());
+    assertNotSame(Call.class, callType);
+    //the Implementor of Impl is shared, and outlives the loader.
+    Object call = Implementor.proxy(callType, new Impl());
+    assertEquals("hi!", callType.getMethod("call", String.class).invoke(call, "hi"));
+    loader = null;
+    callType = null;
+    call = null;
+    for(int i=0; i<10 && ref.get()!=null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(ref.get());
+  }
+  @Test public void testCachedImplementorOfSystemClassReleasedWithDimple() throws Exception {
+    assertDimpleReleased("getCachedInstance", new Class<?>[]{Class.class}, String.class);
+  }
+  /*
+   * Loads dimple itself in a throwaway class loader, 
+   * calls a static method of Implementor with java.* classes only,
+   * and checks that nothing keeps that class loader alive.
+   */
+  private static void assertDimpleReleased(String methodName, Class<?>[] parameterTypes, 
+      Object... args) throws Exception {
+    URLClassLoader loader = new URLClassLoader(getDimpleClassPath(), 
+        ClassLoader.getPlatformClassLoader());
+    WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+    Class<?> implementor = loader.loadClass(Implementor.class.getName());
+    assertNotSame(Implementor.class, implementor);
+    assertNotNull(implementor.getMethod(methodName, parameterTypes).invoke(null, args));
+    implementor = null;
+    loader.close();
+    loader = null;
+    for(int i=0; i<20 && ref.get()!=null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(ref.get());
+  }
+  private static URL[] getDimpleClassPath() {
+    List<URL> urls = new ArrayList<URL>();
+    urls.add(Implementor.class.getProtectionDomain().getCodeSource().getLocation());
+    //asm and cglib are optional.
+    for(String name : new String[]{"org.objectweb.asm.Opcodes", "net.sf.cglib.core.ReflectUtils"}) {
+      try {
+        urls.add(Class.forName(name).getProtectionDomain().getCodeSource().getLocation());
+      }
+      catch(ClassNotFoundException e) {}
+    }
+    return urls.toArray(new URL[urls.size()]);
+  }
+  /*
+   * Loads one class by itself and delegates everything else to the parent.
+   */
+  private static final class IsolatingClassLoader extends ClassLoader {
+    private final String className;
+    IsolatingClassLoader(String className) {
+      super(IsolatingClassLoader.class.getClassLoader());
+      this.className = className;
+    }
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+    throws ClassNotFoundException {
+      if(!className.equals(name)) {
+        return super.loadClass(name, resolve);
+      }
+      Class<?> loaded = findLoadedClass(name);
+      if(loaded == null) {
+        byte[] bytecode = readClassFile(name);
+        loaded = defineClass(name, bytecode, 0, bytecode.length);
+      }
+      return loaded;
+    }
+    private byte[] readClassFile(String name) throws ClassNotFoundException {
+      InputStream in = getParent().getResourceAsStream(name.replace('.', '/')+".class");
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        for(int n; (n=in.read(buf))>0;) {
+          out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+      }
+      catch(IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+}
@@ -11,6 +11,15 @@ public class InterceptorGeneratorTest {
     assertPackageName(Interceptor.class, String.class);
     assertPackageName(Interceptor.class, javax.sql.DataSource.class);
   }
+  public interface Named {
+    String getName();
+  }
+  @Test public void testNoDelegatorForSystemInterface() {
+    assertNull(InterceptorGenerator.getDelegator(java.sql.ResultSet.class, 
+        InterceptorGeneratorTest.class));
+    assertNotNull(InterceptorGenerator.getDelegator(Named.class, 
+        InterceptorGeneratorTest.class));
+  }
 
   private void assertPackageName(
           Class<?> classOfExpectedPackage, Class<?> overriderClass) {
@@ -0,0 +1,126 @@
+package org.codehaus.dimple;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class PrecompiledInterceptorTest {
+  public interface Greeter {
+    String greet(String name);
+    int count(int base);
+    void reset() throws IOException;
+    default String hello() {
+      return greet("hello");
+    }
+  }
+  public static class Plain implements Greeter {
+    public String greet(String name) {
+      return name;
+    }
+    public int count(int base) {
+      return base;
+    }
+    public void reset() {}
+  }
+  @Implement(Greeter.class)
+  public static class Polite {
+    public String greet(Object name) {
+      return "dear " + name;
+    }
+  }
+  @Test public void testInterceptorIsPrecompiled() {
+    Class<?> precompiled = PrecompiledInterceptors.find(Greeter.class, Polite.class, false);
+    assertNotNull(precompiled);
+    Interceptor<Greeter, Polite> interceptor =
+      Implementor.generateInterceptor(Greeter.class, Polite.class);
+    Greeter greeter = interceptor.intercept(new Plain(), new Polite());
+    assertSame(precompiled, greeter.getClass());
+    assertEquals("dear tom", greeter.greet("tom"));
+    assertEquals(3, greeter.count(3));
+  }
+  @Test public void testSpecializedInterceptorIsGeneratedAnyway() {
+    Greeter greeter = Implementor.generateSpecializedInterceptor(
+        Greeter.class, new Plain(), new Polite());
+    assertNotSame(PrecompiledInterceptors.find(Greeter.class, Polite.class, false), 
+        greeter.getClass());
+    assertEquals("dear tom", greeter.greet("tom"));
+    assertEquals(3, greeter.count(3));
+    //same as the precompiled interceptor: default methods go to the intercepted object.
+    assertEquals("hello", greeter.hello());
+  }
+  @Test public void testPrecompiledStub() throws Exception {
+    Greeter stub = Implementor.generateInterceptor(Greeter.class, Polite.class)
+      .stub(new Polite());
+    assertEquals("dear hello", stub.hello());
+    try {
+      stub.count(1);
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {
+      //same as the stub generated at runtime.
+      assertEquals(Greeter.class.getMethod("count", int.class).toString(), e.getMessage());
+    }
+    try {
+      stub.reset();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {
+      assertEquals(Greeter.class.getMethod("reset").toString(), e.getMessage());
+    }
+  }
+  @Test public void testPrecompiledReusableInterceptor() {
+    ReusableInterceptor<Greeter, Polite> reusable =
+      Implementor.generateInterceptor(Greeter.class, Polite.class).newReusable();
+    Greeter greeter = reusable.rebind(new Plain(), new Polite());
+    assertSame(PrecompiledInterceptors.find(Greeter.class, Polite.class, true),
+        greeter.getClass());
+    assertEquals(2, greeter.count(2));
+    assertSame(greeter, reusable.rebind(null, new Polite()));
+    assertEquals("dear hello", greeter.hello());
+  }
+  @Test public void testNoPrecompiledInterceptorWithoutImplementedTypes() {
+    assertNull(PrecompiledInterceptors.find(Greeter.class, Plain.class, false));
+  }
+  @Test public void testUnusedMethodIsCompileError() {
+    List<Diagnostic<? extends JavaFileObject>> errors = compile(
+        "@org.codehaus.dimple.Implement(Runnable.class)\n"
+        + "public class Walker { public void walk() {} }");
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0).getMessage(null).indexOf("is not used to implement anything") >= 0);
+  }
+  @Test public void testIncompatibleReturnTypeIsCompileError() {
+    List<Diagnostic<? extends JavaFileObject>> errors = compile(
+        "@org.codehaus.dimple.Implement(Comparable.class)\n"
+        + "public class Walker { public String compareTo(Object o) { return null; } }");
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0).getMessage(null).indexOf("incompatible return type") >= 0);
+  }
+  private static List<Diagnostic<? extends JavaFileObject>> compile(final String source) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    JavaFileObject file = new SimpleJavaFileObject(
+        URI.create("string:///Walker.java"), JavaFileObject.Kind.SOURCE) {
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+    JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+        Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path")),
+        null, Arrays.asList(file));
+    task.setProcessors(Arrays.asList(new ImplementProcessor()));
+    assertFalse(task.call().booleanValue());
+    return diagnostics.getDiagnostics();
+  }
+}
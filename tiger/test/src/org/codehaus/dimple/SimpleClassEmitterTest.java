@@ -0,0 +1,93 @@
+package org.codehaus.dimple;
+
+import java.lang.reflect.Method;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class SimpleClassEmitterTest {
+  public interface Calc {
+    String name();
+    int add(int a, int b);
+    long mul(long a, double b);
+    double avg(double[] values);
+  }
+  public static class Adder implements Calc {
+    public String name() {
+      return "adder";
+    }
+    public int add(int a, int b) {
+      return a + b;
+    }
+    public long mul(long a, double b) {
+      return a * (long)b;
+    }
+    public double avg(double[] values) {
+      double sum = 0;
+      for(double v : values) {
+        sum += v;
+      }
+      return sum / values.length;
+    }
+  }
+  public static class Doubler {
+    public int add(int a, int b) {
+      return 2*(a + b);
+    }
+  }
+  private String emitter;
+  @Before public void useBuiltinEmitter() {
+    emitter = System.getProperty("dimple.emitter");
+    System.setProperty("dimple.emitter", "builtin");
+  }
+  @After public void restore() {
+    if(emitter == null) {
+      System.clearProperty("dimple.emitter");
+    }
+    else {
+      System.setProperty("dimple.emitter", emitter);
+    }
+  }
+  @Test public void testBuiltinEmitterIsSelected() {
+    assertTrue(ClassEmitters.newClassEmitter() instanceof SimpleClassEmitter);
+  }
+  @Test public void testInterceptor() {
+    Calc calc = Implementor.generateInterceptor(Calc.class, Doubler.class)
+      .intercept(new Adder(), new Doubler());
+    assertEquals("adder", calc.name());
+    assertEquals(6, calc.add(1, 2));
+    assertEquals(6L, calc.mul(2, 3));
+    assertEquals(2.0, calc.avg(new double[]{1, 3}), 0);
+  }
+  @Test public void testStub() {
+    Calc calc = Implementor.generateInterceptor(Calc.class, Doubler.class)
+      .stub(new Doubler());
+    assertEquals(6, calc.add(1, 2));
+    try {
+      calc.name();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  @Test public void testInvoker() throws Throwable {
+    Method[] methods = {
+        Calc.class.getMethod("name"),
+        Calc.class.getMethod("add", int.class, int.class),
+        Calc.class.getMethod("mul", long.class, double.class)
+    };
+    InternalDimpleMethodInvoker invoker =
+      InvokerGenerator.generateInvoker(Calc.class, methods);
+    Calc calc = new Adder();
+    assertEquals("adder", invoker.invoke(0, calc, new Object[0]));
+    assertEquals(Integer.valueOf(3), invoker.invoke(1, calc, new Object[]{1, 2}));
+    assertEquals(Long.valueOf(6), invoker.invoke(2, calc, new Object[]{2L, 3.0}));
+    try {
+      invoker.invoke(3, calc, new Object[0]);
+      fail("IllegalArgumentException expected");
+    }
+    catch(IllegalArgumentException e) {}
+  }
+}
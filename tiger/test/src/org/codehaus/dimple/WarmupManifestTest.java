@@ -0,0 +1,78 @@
+package org.codehaus.dimple;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class WarmupManifestTest {
+  public interface Greeter {
+    String greet(String name);
+  }
+  public interface Counter {
+    int count();
+  }
+  public static class Hello {
+    public String greet(String name) {
+      return "hello " + name;
+    }
+  }
+  public static class GreetingCounter implements Greeter, Counter {
+    public String greet(String name) {
+      return name;
+    }
+    public int count() {
+      return 0;
+    }
+  }
+  private Path file;
+  @Before public void createFile() throws Exception {
+    file = File.createTempFile("dimple", ".manifest").toPath();
+    Files.delete(file);
+  }
+  @After public void deleteFile() throws Exception {
+    Files.deleteIfExists(file);
+  }
+  @Test public void testRecordOncePerTypes() throws Exception {
+    WarmupManifest manifest = new WarmupManifest(file);
+    manifest.add(WarmupManifest.IMPLEMENT, Hello.class, Greeter.class);
+    manifest.add(WarmupManifest.INTERCEPT, Hello.class, Greeter.class);
+    manifest.add(WarmupManifest.IMPLEMENT, Hello.class, Greeter.class);
+    new WarmupManifest(file).add(WarmupManifest.INTERCEPT, Hello.class, Greeter.class);
+    assertEquals(Arrays.asList(
+        "implement " + Hello.class.getName() + " " + Greeter.class.getName(),
+        "intercept " + Hello.class.getName() + " " + Greeter.class.getName()),
+        Files.readAllLines(file, StandardCharsets.UTF_8));
+  }
+  @Test public void testPreload() throws Exception {
+    WarmupManifest manifest = new WarmupManifest(file);
+    manifest.add(WarmupManifest.IMPLEMENT, Hello.class, Greeter.class);
+    manifest.add(WarmupManifest.INTERCEPT, Hello.class, Greeter.class);
+    manifest.add(WarmupManifest.OVERRIDE, Hello.class, GreetingCounter.class);
+    Files.write(file, "implement no.such.Impl java.lang.Runnable\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    ForkJoinTask<?> task = Implementor.preload(file);
+    task.join();
+    assertTrue(task.isCompletedNormally());
+    assertEquals("hello tom", Implementor.proxy(Greeter.class, new Hello()).greet("tom"));
+  }
+  @Test public void testPreloadRejectsInvalidLine() throws Exception {
+    Files.write(file, "implement java.lang.Object\n".getBytes(StandardCharsets.UTF_8));
+    try {
+      Implementor.preload(file).join();
+      fail("IllegalArgumentException expected");
+    }
+    catch(IllegalArgumentException e) {
+      assertTrue(e.getMessage().indexOf("java.lang.Object") >= 0);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.codehaus.dimple.interceptor;
+
+import org.codehaus.dimple.Implementor;
+import org.codehaus.dimple.Interceptor;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class ClassInterceptorTest {
+  public static abstract class Account {
+    private final String id;
+    protected Account(String id, int version) {
+      this.id = id;
+    }
+    public String getId() {
+      return id;
+    }
+    public abstract double balance();
+    public double interest(double rate) {
+      return balance() * rate;
+    }
+    public final String describe() {
+      return "account " + id;
+    }
+    public String toString() {
+      return getId();
+    }
+  }
+  public static class Saving extends Account {
+    private final double balance;
+    public Saving(String id, double balance) {
+      super(id, 1);
+      this.balance = balance;
+    }
+    public double balance() {
+      return balance;
+    }
+  }
+  public static class Counter {
+    private int count;
+    public int increment() {
+      return ++count;
+    }
+    public int get() {
+      return count;
+    }
+  }
+  public static class Doubled {
+    public double balance() {
+      return 200;
+    }
+  }
+  @Test public void testAbstractClass() {
+    Account account = new Saving("tom", 100);
+    Interceptor<Account, Doubled> interceptor = 
+      Implementor.generateInterceptor(Account.class, Doubled.class);
+    Account intercepted = interceptor.intercept(account, new Doubled());
+    assertEquals(200.0, intercepted.balance());
+    assertEquals("tom", intercepted.getId());
+    //not overridable, uses the state of the interceptor itself.
+    assertEquals("account null", intercepted.describe());
+    assertEquals(2.0, intercepted.interest(0.02), 0.001);
+    assertEquals("tom", intercepted.toString());
+  }
+  @Test public void testConcreteClass() {
+    Counter counter = new Counter();
+    Counter intercepted = Implementor.intercept(Counter.class, counter, new Object(){
+      @SuppressWarnings("unused")
+      public int get() {
+        return -1;
+      }
+    });
+    assertEquals(1, intercepted.increment());
+    assertEquals(1, counter.get());
+    assertEquals(-1, intercepted.get());
+  }
+  @Test public void testStubClass() {
+    Account stub = Implementor.stub(Account.class, new Doubled());
+    assertEquals(200.0, stub.balance());
+    try {
+      stub.getId();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  public static class Named {
+    private final String name;
+    public Named(String name) {
+      this.name = name;
+    }
+    String name() {
+      return name;
+    }
+    public String greet() {
+      return "hi " + name();
+    }
+  }
+  @Test public void testPackagePrivateMethodIsNotIntercepted() {
+    Named intercepted = Implementor.intercept(Named.class, new Named("tom"), new Object());
+    assertEquals("hi tom", intercepted.greet());
+    //runs on the state of the interceptor, initialized with null.
+    assertNull(intercepted.name());
+  }
+  public static abstract class Hidden {
+    abstract String name();
+  }
+  @Test(expected=IllegalArgumentException.class)
+  public void testAbstractPackagePrivateMethodRejected() {
+    Implementor.generateInterceptor(Hidden.class, Object.class);
+  }
+  public static class Checked {
+    public Checked(String name) {
+      if(name == null) throw new NullPointerException("name");
+    }
+    public String get() {
+      return "checked";
+    }
+  }
+  @Test public void testConstructorRejectingDefaultsRejected() {
+    try {
+      Implementor.generateInterceptor(Checked.class, Object.class);
+      fail("IllegalArgumentException expected");
+    }
+    catch(IllegalArgumentException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+  public static final class Sealed {
+    public int get() {
+      return 1;
+    }
+  }
+  @Test(expected=IllegalArgumentException.class)
+  public void testFinalClassRejected() {
+    Implementor.generateInterceptor(Sealed.class, Object.class);
+  }
+}
@@ -0,0 +1,83 @@
+package org.codehaus.dimple.interceptor;
+
+import org.codehaus.dimple.Implementor;
+import org.codehaus.dimple.Interceptor;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class DefaultMethodTest {
+  public interface Named {
+    String name();
+    default String greet(String greeting) {
+      return greeting + " " + name();
+    }
+  }
+  public interface Greeter extends Named {
+    void reset();
+    default int length(long base) {
+      return (int)base + name().length();
+    }
+  }
+  public static class Tom {
+    public String name() {
+      return "tom";
+    }
+  }
+  public static class Polite extends Tom {
+    public String greet(String greeting) {
+      return greeting + " dear " + name();
+    }
+  }
+  public static class Jerry implements Greeter {
+    public String name() {
+      return "jerry";
+    }
+    public void reset() {}
+    public String greet(String greeting) {
+      return greeting + "!";
+    }
+  }
+  public static abstract class AbstractGreeter implements Greeter {
+    public void reset() {}
+  }
+  @Test public void testStubRunsDefaultMethods() {
+    Greeter stub = Implementor.stub(Greeter.class, new Tom());
+    assertEquals("hello tom", stub.greet("hello"));
+    assertEquals(4, stub.length(1));
+    try {
+      stub.reset();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  @Test public void testOverriderWinsOverDefaultMethod() {
+    assertEquals("hi dear tom", Implementor.stub(Greeter.class, new Polite()).greet("hi"));
+  }
+  @Test public void testIntercepteeWinsOverDefaultMethod() {
+    Greeter greeter = Implementor.intercept(Greeter.class, new Jerry(), new Tom());
+    assertEquals("hi!", greeter.greet("hi"));
+    assertEquals(6, greeter.length(1));
+  }
+  @Test public void testClassStubRunsDefaultMethods() {
+    AbstractGreeter stub = Implementor.stub(AbstractGreeter.class, new Tom());
+    assertEquals("hello tom", stub.greet("hello"));
+    try {
+      stub.reset();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  @Test public void testSpecializedAndReusableStubs() {
+    Interceptor<Greeter, Tom> interceptor =
+      Implementor.generateInterceptor(Greeter.class, Tom.class);
+    assertEquals("hello tom", interceptor.specialize(null, new Tom()).greet("hello"));
+    assertEquals("hello tom", interceptor.newReusable().rebind(null, new Tom()).greet("hello"));
+  }
+  @Test public void testProxyRunsDefaultMethods() {
+    Greeter proxy = Implementor.proxy(Greeter.class, new Tom());
+    assertEquals("hello tom", proxy.greet("hello"));
+    assertEquals(4, proxy.length(1));
+    assertEquals("hi dear tom", Implementor.proxy(Greeter.class, new Polite()).greet("hi"));
+  }
+}
@@ -1,9 +1,17 @@
 package org.codehaus.dimple.interceptor;
 
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.codehaus.dimple.Implement;
 import org.codehaus.dimple.Implementor;
 import org.codehaus.dimple.Interceptor;
+import org.codehaus.dimple.ReusableInterceptor;
 import org.codehaus.dimple.UnusedMethodException;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
@@ -125,6 +133,108 @@ public class InterceptorTest {
     Implementor.generateInterceptor(Call.class, MyStaticInterceptor.class)
         .stub(null).f();
   }
+  @Test public void testStubsShareGeneratedClass() {
+    Interceptor<Call, MyInterceptor> interceptor = 
+      Implementor.generateInterceptor(Call.class, MyInterceptor.class);
+    Call stub1 = interceptor.stub(new MyInterceptor());
+    Call stub2 = interceptor.stub(new MyInterceptor());
+    assertNotSame(stub1, stub2);
+    assertSame(stub1.getClass(), stub2.getClass());
+    try {
+      stub1.f();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {
+      assertTrue(e.getMessage().indexOf("f()") > 0);
+    }
+  }
+  @Test public void testGeneratedClassHasFinalTypedFields() throws Exception {
+    Class<?> generated = Implementor.generateInterceptor(Call.class, MyInterceptor.class)
+        .stub(new MyInterceptor()).getClass();
+    assertTrue(Modifier.isFinal(generated.getModifiers()));
+    Field interceptee = getField(generated, "interceptee");
+    assertEquals(Call.class, interceptee.getType());
+    assertTrue(Modifier.isFinal(interceptee.getModifiers()));
+    Field overrider = generated.getDeclaredField("overrider");
+    assertEquals(MyInterceptor.class, overrider.getType());
+    assertTrue(Modifier.isFinal(overrider.getModifiers()));
+  }
+  //the interceptee field may be inherited from the delegator shared by all impl classes.
+  private static Field getField(Class<?> type, String name) throws NoSuchFieldException {
+    for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+      try {
+        return c.getDeclaredField(name);
+      }
+      catch(NoSuchFieldException e) {}
+    }
+    throw new NoSuchFieldException(name);
+  }
+  @Test public void testInterceptorsShareDelegator() throws Exception {
+    Class<?> generated1 = Implementor.generateInterceptor(Call.class, MyInterceptor.class)
+        .stub(new MyInterceptor()).getClass();
+    Class<?> generated2 = Implementor.generateInterceptor(Call.class, Impl.class)
+        .stub(null).getClass();
+    assertNotSame(generated1, generated2);
+    assertSame(generated1.getSuperclass(), generated2.getSuperclass());
+    assertTrue(Call.class.isAssignableFrom(generated1.getSuperclass()));
+    //only the method of the impl class and the factory method are generated.
+    assertEquals(2, generated2.getDeclaredMethods().length);
+    generated2.getDeclaredMethod("call2", boolean.class, char.class, byte.class, 
+        short.class, int.class, float.class, double.class, String.class);
+  }
+  @Test public void testGeneratedClassIsHidden() {
+    Call stub = Implementor.generateInterceptor(Call.class, MyInterceptor.class)
+        .stub(new MyInterceptor());
+    assertTrue(stub.getClass().isHidden());
+  }
+  @Test public void testReusableInterceptor() {
+    ReusableInterceptor<Call, MyInterceptor> reusable = 
+      Implementor.generateInterceptor(Call.class, MyInterceptor.class).newReusable();
+    MyInterceptor overrider = new MyInterceptor();
+    Call call1 = mock(Call.class);
+    Call call2 = mock(Call.class);
+    call1.f();
+    call2.f();
+    mocker.replay();
+    Call wrapper = reusable.rebind(call1, overrider);
+    wrapper.f();
+    assertSame(wrapper, reusable.rebind(call2, overrider));
+    wrapper.f();
+    assertEquals("hi", wrapper.translate("hi"));
+    reusable.rebind(null, overrider);
+    try {
+      wrapper.f();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
+  @Test public void testSpecializedInterceptor() throws Exception {
+    Call interceptee = mock(Call.class);
+    interceptee.f();
+    mocker.replay();
+    MyInterceptor overrider = new MyInterceptor();
+    Call call = Implementor.generateSpecializedInterceptor(Call.class, interceptee, overrider);
+    call.f();
+    assertEquals("hi", call.translate("hi"));
+    assertEquals("my interceptor", call.toString());
+    Field bound = call.getClass().getDeclaredField("overrider");
+    assertTrue(Modifier.isStatic(bound.getModifiers()));
+    assertTrue(Modifier.isFinal(bound.getModifiers()));
+    bound.setAccessible(true);
+    assertSame(overrider, bound.get(null));
+    assertNotSame(call.getClass(), 
+        Implementor.generateSpecializedInterceptor(Call.class, interceptee, overrider).getClass());
+  }
+  @Test public void testSpecializedStub() {
+    Call stub = Implementor.generateInterceptor(Call.class, MyInterceptor.class)
+      .specialize(null, new MyInterceptor());
+    assertEquals("hi", stub.translate("hi"));
+    try {
+      stub.f();
+      fail("UnsupportedOperationException expected");
+    }
+    catch(UnsupportedOperationException e) {}
+  }
   @Test
   public void testToString() {
     assertEquals("my interceptor", 
@@ -141,4 +251,33 @@ public class InterceptorTest {
         .stub(new MyInterceptor());
     assertEquals(stub, stub);
   }
+  public static class ConcurrentInterceptor {
+    public String translate(String s) {
+      return s+s;
+    }
+  }
+  @SuppressWarnings("unchecked")
+  @Test public void testConcurrentGenerationSharesInterceptor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Callable<Interceptor<Call, ConcurrentInterceptor>> generate = 
+        new Callable<Interceptor<Call, ConcurrentInterceptor>>() {
+          public Interceptor<Call, ConcurrentInterceptor> call() {
+            return Implementor.generateInterceptor(Call.class, ConcurrentInterceptor.class);
+          }
+        };
+      Future<Interceptor<Call, ConcurrentInterceptor>>[] futures = new Future[16];
+      for(int i=0; i<futures.length; i++) {
+        futures[i] = executor.submit(generate);
+      }
+      Interceptor<Call, ConcurrentInterceptor> interceptor = futures[0].get();
+      for(Future<Interceptor<Call, ConcurrentInterceptor>> future : futures) {
+        assertSame(interceptor, future.get());
+      }
+      assertEquals("hihi", interceptor.stub(new ConcurrentInterceptor()).translate("hi"));
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,63 @@
+package org.codehaus.dimple.interceptor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+import org.codehaus.dimple.Implementor;
+import org.codehaus.dimple.Interceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class RelinkTest {
+  public interface Greeter {
+    String greet(String name);
+  }
+  public static class Hello {
+    public String greet(String name) {
+      return "hello " + name;
+    }
+  }
+  public static class Hi {
+    public String greet(String name) {
+      return "hi " + name;
+    }
+  }
+  private String codegen;
+  @Before public void enableIndy() {
+    codegen = System.getProperty("dimple.codegen");
+    System.setProperty("dimple.codegen", "indy");
+  }
+  @After public void restore() {
+    if(codegen == null) {
+      System.clearProperty("dimple.codegen");
+    }
+    else {
+      System.setProperty("dimple.codegen", codegen);
+    }
+  }
+  @Test public void testRelink() throws Exception {
+    Interceptor<Greeter, Hello> interceptor = 
+      Implementor.generateInterceptor(Greeter.class, Hello.class);
+    Greeter greeter = interceptor.stub(new Hello());
+    assertEquals("hello tom", greeter.greet("tom"));
+    MethodHandle hi = MethodHandles.lookup()
+      .unreflect(Hi.class.getMethod("greet", String.class)).bindTo(new Hi());
+    //the receiver is the overrider.
+    Implementor.relink(greeter.getClass(), Greeter.class.getMethod("greet", String.class), 
+        MethodHandles.dropArguments(hi, 0, Hello.class));
+    assertEquals("hi tom", greeter.greet("tom"));
+    assertEquals("hi tom", interceptor.stub(new Hello()).greet("tom"));
+    Implementor.relink(greeter.getClass());
+    assertEquals("hello tom", greeter.greet("tom"));
+  }
+  @Test public void testRelinkRequiresIndyMode() {
+    try {
+      Implementor.relink(Hello.class);
+      fail("IllegalArgumentException expected");
+    }
+    catch(IllegalArgumentException e) {}
+  }
+}